@@ -128,6 +128,12 @@ public class DocumentBuilderImpl extends DocumentBuilder {
             String namespaces = "http://xml.org/sax/features/namespaces";
             xmlReader.setFeature(namespaces, namespaceAware);
 
+            // The builder merges adjacent text anyway; have the parser
+            // report each run of text at once
+            String coalesce =
+                    "http://apache.org/xml/features/coalesce-characters";
+            xmlReader.setFeature(coalesce, true);
+
             // Use the appropriate DOM builder based on "namespaceAware"
             if (namespaceAware) {
                 builder = new XmlDocumentBuilderNS();
@@ -77,6 +77,9 @@ class AttributeDecl
     boolean	isRequired;
     boolean	isFixed;
     boolean	isFromInternalSubset;
+
+    // position in the element's defaulting plan, else -1
+    int		index = -1;
     
     final static String	CDATA = "CDATA";
     
@@ -0,0 +1,102 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Supplies the handlers for documents parsed by a {@link BatchParser},
+ * and learns the outcome of each parse.  Both methods are called on the
+ * thread parsing the document, so they must be safe to call from several
+ * threads at once.
+ *
+ * <P> A handler which also implements <code>LexicalHandler</code>,
+ * <code>DeclHandler</code> or <code>DTDHandler</code> is used for those
+ * events too; so for example a new
+ * <code>org.apache.crimson.tree.XmlDocumentBuilder</code> can be returned
+ * for each document, to collect DOM documents.
+ *
+ * @version $Revision$
+ */
+public interface BatchListener
+{
+    /**
+     * Returns the handler for the given document, or null if its events
+     * are not needed (for example, when only validating).
+     *
+     * @param index the position of the document's input source in
+     *	the batch
+     */
+    public ContentHandler startDocument (int index)
+    throws SAXException;
+
+    /**
+     * Reports that parsing the document ended.
+     *
+     * @param index the position of the document's input source in
+     *	the batch
+     * @param handler the handler returned by <em>startDocument</em>
+     * @param failure null if the document was parsed, otherwise the
+     *	exception which ended the parse
+     */
+    public void endDocument (int index, ContentHandler handler,
+	Exception failure);
+}
@@ -0,0 +1,332 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DeclHandler;
+import org.xml.sax.ext.LexicalHandler;
+
+
+/**
+ * Parses batches of independent documents concurrently.  Each document
+ * is parsed as a task on the <code>Executor</code> provided by the
+ * caller (for example a fixed size thread pool), with its own parser;
+ * a {@link BatchListener} supplies the handler for each document and
+ * learns how each parse ended.
+ *
+ * <P> When the documents share a DTD, it can be read once using
+ * <em>setDTD</em>.  Documents whose DOCTYPE names that DTD as their
+ * external subset (by system ID, or by public ID if the DTD was given
+ * no system ID) then use its declarations instead of reading it again,
+ * unless they also have an internal subset.  Notation and general
+ * entity declarations from a shared DTD are reported as usual, but
+ * element and attribute declarations are not.
+ *
+ * <P> All the parsers use the same entity resolver, by default a single
+ * {@link CachingResolver}, and the same error handler.  Both must be safe to
+ * use from several threads at once.
+ *
+ * <P> Several threads may call <em>parse</em> on one instance at once;
+ * each call waits only for its own documents.  Settings must not be
+ * changed while any parse is in progress.
+ *
+ * @version $Revision$
+ */
+public class BatchParser
+{
+    private Executor            executor;
+
+    // parsing modes
+    private boolean             namespaces = true;
+    private boolean             validating;
+    private EntityResolver      resolver = new CachingResolver();
+    private ErrorHandler        errHandler;
+    private Locale              locale;
+    private Grammar             dtd;
+
+
+    /**
+     * Constructs a parser which runs its tasks on the given executor.
+     */
+    public BatchParser(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Controls whether namespace processing is done; by default it is.
+     */
+    public void setNamespaceAware(boolean value) {
+        namespaces = value;
+    }
+
+    /**
+     * Controls whether documents are validated; by default they aren't.
+     * Validity errors are reported to the error handler.
+     */
+    public void setValidating(boolean value) {
+        validating = value;
+    }
+
+    public void setEntityResolver(EntityResolver resolver) {
+        this.resolver = (resolver == null) ? new CachingResolver() : resolver;
+    }
+
+    public void setErrorHandler(ErrorHandler handler) {
+        errHandler = handler;
+    }
+
+    /**
+     * Assigns the locale used for diagnostics, or null for the default
+     * locale.  Unsupported locales are reported as each parse starts.
+     */
+    public void setLocale(Locale locale) {
+        this.locale = locale;
+    }
+
+    /**
+     * Reads the DTD which documents in later batches may share, or
+     * stops sharing one if the input source is null.  Its system ID
+     * should be the absolute URI documents use to refer to it.  Errors
+     * in the DTD, including validity errors, are reported to the error
+     * handler.
+     */
+    public void setDTD(InputSource input)
+        throws SAXException, IOException
+    {
+        if (input == null) {
+            dtd = null;
+            return;
+        }
+
+        // always validating, so content models are built
+        ValidatingParser parser = new ValidatingParser();
+
+        parser.setErrorHandler(errHandler);
+        parser.setEntityResolver(resolver);
+        parser.setLocale(locale);
+        dtd = parser.parseDTD(input);
+    }
+
+    /**
+     * Assigns a grammar, which documents in later batches may share in
+     * the same way as a DTD read with {@link #setDTD}, or null to stop
+     * sharing one.  Grammars may be shared by several batch parsers.
+     */
+    public void setGrammar(Grammar grammar) {
+        dtd = grammar;
+    }
+
+    /** Returns the grammar documents may share, if any. */
+    public Grammar getGrammar() {
+        return dtd;
+    }
+
+    /**
+     * Parses each document, returning once all have been parsed.
+     * Failures are reported to the listener, not thrown; but if an
+     * <code>Error</code> ends any parse, the first one is rethrown once
+     * the rest of the batch has finished.
+     */
+    public void parse(InputSource sources [], BatchListener listener)
+        throws IOException
+    {
+        Batch batch = new Batch(sources.length);
+        int submitted = 0;
+
+        try {
+            for (; submitted < sources.length; submitted++) {
+                executor.execute(new Task(batch, submitted,
+                                          sources[submitted], listener, dtd));
+            }
+        } finally {
+            // tasks that weren't accepted won't finish
+            batch.await(sources.length - submitted);
+        }
+    }
+
+
+    /**
+     * Tracks the tasks of one call to <em>parse</em>.  Each call has its
+     * own, so tasks left running by an interrupted call can't affect
+     * later ones.
+     */
+    private static final class Batch
+    {
+        private int             remaining;
+        private Error           error;          // first one in the batch
+
+        Batch(int count) {
+            remaining = count;
+        }
+
+        synchronized void finished(Error e) {
+            if (e != null && error == null) {
+                error = e;
+            }
+            remaining--;
+            notifyAll();
+        }
+
+        // waits for the tasks, less those never started
+        synchronized void await(int unstarted) throws IOException {
+            remaining -= unstarted;
+            while (remaining > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+
+    /**
+     * Parses one document of the batch.
+     */
+    private final class Task implements Runnable
+    {
+        private Batch           batch;
+        private int             index;
+        private InputSource     source;
+        private BatchListener   listener;
+        private Grammar         dtd;
+
+        Task(Batch batch, int index, InputSource source,
+             BatchListener listener, Grammar dtd)
+        {
+            this.batch = batch;
+            this.index = index;
+            this.source = source;
+            this.listener = listener;
+            this.dtd = dtd;
+        }
+
+        public void run() {
+            ContentHandler handler = null;
+            Exception failure = null;
+            Error error = null;
+
+            // however the task ends, parse() mustn't wait for it forever
+            try {
+                try {
+                    parse(handler = listener.startDocument(index));
+                } catch (Exception e) {
+                    failure = e;
+                } catch (Error e) {
+                    error = e;
+                    failure = new SAXException(e.toString());
+                }
+                listener.endDocument(index, handler, failure);
+            } catch (Error e) {
+                if (error == null) {
+                    error = e;
+                }
+            } finally {
+                batch.finished(error);
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        private void parse(ContentHandler handler)
+            throws SAXException, IOException
+        {
+            Parser2 parser = validating
+                ? new ValidatingParser()
+                : new Parser2();
+
+            parser.setNamespaceFeatures(namespaces, false);
+            parser.setErrorHandler(errHandler);
+            parser.setEntityResolver(resolver);
+            parser.setLocale(locale);
+            parser.setSharedDTD(dtd);
+
+            parser.setContentHandler(handler);
+            if (handler instanceof LexicalHandler) {
+                parser.setLexicalHandler((LexicalHandler) handler);
+            }
+            if (handler instanceof DeclHandler) {
+                parser.setDeclHandler((DeclHandler) handler);
+            }
+            if (handler instanceof DTDHandler) {
+                parser.setDTDHandler((DTDHandler) handler);
+            }
+            parser.parse(source);
+        }
+    }
+}
@@ -0,0 +1,510 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Hashtable;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+
+/**
+ * This resolver keeps copies of the external entities it resolves, such
+ * as DTDs and their modules, so that later parses don't need to fetch
+ * them again.  Entities are identified by their public and system IDs,
+ * and then found using any catalog entries (registered with the
+ * <em>registerCatalogEntry</em> methods, or in XML catalogs) before
+ * the system ID is used.
+ *
+ * <P> The most recently used entities are kept in memory, up to a limit
+ * on their total size.  Optionally, they can also be kept in a directory,
+ * where they survive restarts of the application.  Entities read from
+ * <em>file:</em> URLs are checked against the file's modification time
+ * each time they are used; other entities are kept until they are
+ * discarded to make room, or until <em>clear</em> is called.  Since
+ * entities are kept by the URI catalog entries map them to, changing
+ * a catalog entry takes effect at once.
+ *
+ * <P> Instances may be shared by parsers on several threads.
+ *
+ * @version $Revision$
+ */
+public class CachingResolver extends Resolver
+{
+    // memory tier:  a table of entries, which are also on a list in
+    // order of use (most recent at the head)
+    private Hashtable		entries = new Hashtable (17);
+    private Entry		head, tail;
+    private int			size;
+    private int			maxSize;
+
+    // optional disk tier
+    private File		directory;
+
+
+    /**
+     * Constructs a resolver keeping up to a megabyte of entities
+     * in memory.
+     */
+    public CachingResolver ()
+	{ this (1024 * 1024); }
+
+    /**
+     * Constructs a resolver keeping up to the given number of bytes
+     * of entities in memory.
+     */
+    public CachingResolver (int maxSize)
+    {
+	if (maxSize < 0)
+	    throw new IllegalArgumentException ();
+	this.maxSize = maxSize;
+    }
+
+    /**
+     * Assigns a directory where entities are also kept, or null (the
+     * default) to keep them only in memory.  The directory is created
+     * if needed.
+     */
+    public void setCacheDirectory (File directory)
+    throws IOException
+    {
+	if (directory != null && !directory.isDirectory ()
+		&& !directory.mkdirs ())
+	    throw new IOException ("Can't create " + directory);
+	this.directory = directory;
+    }
+
+    /** Returns the directory where entities are kept, if any. */
+    public File getCacheDirectory ()
+	{ return directory; }
+
+    /**
+     * Discards all entities kept in memory, and any kept in the cache
+     * directory.
+     */
+    public synchronized void clear ()
+    {
+	entries.clear ();
+	head = tail = null;
+	size = 0;
+
+	if (directory != null) {
+	    String	names [] = directory.list ();
+
+	    for (int i = 0; names != null && i < names.length; i++) {
+		if (names [i].startsWith ("entity-")
+			&& names [i].endsWith (".cache"))
+		    new File (directory, names [i]).delete ();
+	    }
+	}
+    }
+
+
+    /**
+     * <b>SAX:</b>
+     * Resolve the given entity into an input source, using a copy kept
+     * from an earlier call if possible.  Catalog entries are applied as
+     * described for {@link Resolver#resolveEntity}, before any copy is
+     * looked up; copies are kept by public ID and the URI actually used,
+     * so changing a catalog entry never returns a copy of the entity it
+     * used to name.
+     */
+    public InputSource resolveEntity (String name, String uri)
+    throws IOException, SAXException
+    {
+	String		location = location (name, uri);
+	String		key;
+	Entry		entry;
+
+	if (location == null)
+	    return null;
+
+	key = ((name == null) ? "" : name) + '\u0000' + location;
+	entry = lookup (key);
+	if (entry == null && directory != null) {
+	    entry = load (key);
+	    if (entry != null)
+		remember (entry);
+	}
+	if (entry == null || entry.isStale ()) {
+	    entry = fetch (key, name, uri, location);
+	    if (entry == null)
+		return null;
+	    if (entry.cacheable) {
+		remember (entry);
+		if (directory != null)
+		    save (entry);
+	    }
+	}
+	return entry.getInputSource (name);
+    }
+
+
+    // where the entity is read from, once catalog entries are applied;
+    // preferences are the same as in Resolver.resolveEntity
+    private String location (String name, String uri)
+    {
+	String		mappedURI = name2uri (name);
+	String		resource;
+
+	if (mappedURI != null)
+	    return mappedURI;
+	if ((resource = name2resource (name)) != null)
+	    return RESOURCE + resource;
+	if ((mappedURI = catalogURI (name, uri)) != null)
+	    return mappedURI;
+	return uri;
+    }
+
+    private static final String	RESOURCE = "java:resource:";
+
+
+    // reads the entity from the location found for it, or returns
+    // null if it names a missing resource and there's no other copy
+    private Entry fetch (String key, String name, String uri,
+	    String location)
+    throws IOException
+    {
+	Entry		entry = new Entry ();
+	InputStream	stream = null;
+
+	entry.key = key;
+	if (location.startsWith (RESOURCE)) {
+	    stream = mapResource (name);
+	    if (stream != null)
+		entry.systemId = location;
+	    else {
+		// as in Resolver, a missing resource isn't an error; the
+		// copy found instead isn't what the key names, so it's
+		// not kept
+		location = catalogURI (name, uri);
+		if (location == null)
+		    location = uri;
+		if (location == null)
+		    return null;
+		entry.cacheable = false;
+	    }
+	}
+	if (stream == null) {
+	    URL			url = new URL (location);
+	    URLConnection	conn = url.openConnection ();
+
+	    stream = conn.getInputStream ();
+	    entry.systemId = conn.getURL ().toString ();
+	    entry.contentType = conn.getContentType ();
+	    entry.protocol = url.getProtocol ();
+	    if ("file".equalsIgnoreCase (entry.protocol)) {
+		File	file = entry.file ();
+
+		// without a file to check, changes couldn't be noticed
+		if (file == null || !file.exists ())
+		    entry.cacheable = false;
+		else
+		    entry.lastModified = file.lastModified ();
+	    }
+	}
+
+	try {
+	    ByteArrayOutputStream	out = new ByteArrayOutputStream ();
+	    byte			buf [] = new byte [4096];
+	    int				len;
+
+	    while ((len = stream.read (buf)) != -1)
+		out.write (buf, 0, len);
+	    entry.data = out.toByteArray ();
+	} finally {
+	    stream.close ();
+	}
+	return entry;
+    }
+
+
+    //
+    // memory tier
+    //
+
+    private synchronized Entry lookup (String key)
+    {
+	Entry		entry = (Entry) entries.get (key);
+
+	if (entry != null && entry != head) {
+	    unlink (entry);
+	    link (entry);
+	}
+	return entry;
+    }
+
+    private synchronized void remember (Entry entry)
+    {
+	Entry		old = (Entry) entries.remove (entry.key);
+
+	if (old != null) {
+	    unlink (old);
+	    size -= old.data.length;
+	}
+	if (entry.data.length > maxSize)
+	    return;
+
+	entries.put (entry.key, entry);
+	link (entry);
+	size += entry.data.length;
+
+	// discard the least recently used entries
+	while (size > maxSize) {
+	    old = tail;
+	    unlink (old);
+	    entries.remove (old.key);
+	    size -= old.data.length;
+	}
+    }
+
+    private void link (Entry entry)
+    {
+	entry.previous = null;
+	entry.next = head;
+	if (head != null)
+	    head.previous = entry;
+	head = entry;
+	if (tail == null)
+	    tail = entry;
+    }
+
+    private void unlink (Entry entry)
+    {
+	if (entry.previous != null)
+	    entry.previous.next = entry.next;
+	else
+	    head = entry.next;
+	if (entry.next != null)
+	    entry.next.previous = entry.previous;
+	else
+	    tail = entry.previous;
+	entry.previous = entry.next = null;
+    }
+
+
+    //
+    // disk tier:  one file per entity, holding its key so that hash
+    // collisions are noticed
+    //
+
+    private File fileFor (String key)
+    {
+	return new File (directory,
+	    "entity-" + Integer.toHexString (key.hashCode ()) + ".cache");
+    }
+
+    private Entry load (String key)
+    {
+	File		file = fileFor (key);
+
+	if (!file.exists ())
+	    return null;
+	try {
+	    DataInputStream	in;
+	    Entry		entry = new Entry ();
+
+	    in = new DataInputStream (new FileInputStream (file));
+	    try {
+		if (!key.equals (in.readUTF ()))
+		    return null;
+		entry.key = key;
+		entry.systemId = in.readUTF ();
+		entry.contentType = in.readUTF ();
+		if (entry.contentType.length () == 0)
+		    entry.contentType = null;
+		entry.protocol = in.readUTF ();
+		if (entry.protocol.length () == 0)
+		    entry.protocol = null;
+		entry.lastModified = in.readLong ();
+		entry.data = new byte [in.readInt ()];
+		in.readFully (entry.data);
+	    } finally {
+		in.close ();
+	    }
+	    return entry;
+
+	} catch (IOException e) {
+	    // treat damaged files as missing
+	    return null;
+	}
+    }
+
+    private void save (Entry entry)
+    {
+	File		file = fileFor (entry.key);
+	File		temp = new File (directory, file.getName ()
+			    + "." + Thread.currentThread ().hashCode ());
+
+	try {
+	    DataOutputStream	out;
+
+	    out = new DataOutputStream (new FileOutputStream (temp));
+	    try {
+		out.writeUTF (entry.key);
+		out.writeUTF (entry.systemId);
+		out.writeUTF (entry.contentType == null
+			? "" : entry.contentType);
+		out.writeUTF (entry.protocol == null ? "" : entry.protocol);
+		out.writeLong (entry.lastModified);
+		out.writeInt (entry.data.length);
+		out.write (entry.data);
+	    } finally {
+		out.close ();
+	    }
+	    file.delete ();
+	    if (!temp.renameTo (file))
+		temp.delete ();
+
+	} catch (IOException e) {
+	    // the disk tier is only an optimization
+	    temp.delete ();
+	}
+    }
+
+
+    /**
+     * The bytes of one entity, with what's needed to decode them.
+     */
+    private final class Entry
+    {
+	String		key;
+	String		systemId;
+	String		contentType;
+	String		protocol;
+	long		lastModified;
+	byte		data [];
+	boolean		cacheable = true;
+
+	Entry		previous, next;
+
+	// the file backing a "file:" URL, or null if it isn't local
+	File file ()
+	{
+	    try {
+		URI	uri;
+
+		try {
+		    uri = new URI (systemId);
+		} catch (URISyntaxException e) {
+		    // URLs may hold characters URIs must escape
+		    URL	url = new URL (systemId);
+
+		    uri = new URI (url.getProtocol (), url.getAuthority (),
+			    url.getPath (), null, null);
+		}
+
+		String	host = uri.getAuthority ();
+
+		if (host != null && !"localhost".equalsIgnoreCase (host))
+		    return null;
+		if (host != null)
+		    uri = new URI ("file", null, uri.getPath (), null, null);
+		return new File (uri);
+	    } catch (IOException e) {
+		return null;
+	    } catch (URISyntaxException e) {
+		return null;
+	    } catch (IllegalArgumentException e) {
+		return null;
+	    }
+	}
+
+	// true if the file backing a "file:" URL has changed, or is gone
+	boolean isStale ()
+	{
+	    if (!"file".equalsIgnoreCase (protocol))
+		return false;
+
+	    File	file = file ();
+
+	    return file == null || !file.exists ()
+		|| file.lastModified () != lastModified;
+	}
+
+	InputSource getInputSource (String publicId)
+	throws IOException
+	{
+	    InputStream		stream = new ByteArrayInputStream (data);
+	    InputSource		retval;
+
+	    if (contentType == null || isIgnoringMIME ())
+		retval = new InputSource (XmlReader.createReader (stream));
+	    else
+		retval = createInputSource (contentType, stream,
+			false, protocol);
+	    retval.setSystemId (systemId);
+	    retval.setPublicId (publicId);
+	    return retval;
+	}
+    }
+}
@@ -109,6 +109,13 @@ final class ContentModel
     //
     private SimpleHashtable	cache = new SimpleHashtable ();
 
+    //
+    // Once compiled, the set of element names which can be 'first',
+    // used instead of the cache.  Compiled models are never modified,
+    // so they can be shared by parsers on different threads.
+    //
+    private SimpleHashtable	firstSet;
+
 
     /**
      * Create a content model for an element.
@@ -183,9 +190,13 @@ final class ContentModel
      * first token in the input stream.
      */
     public boolean first (String token) {
-	Boolean		b = (Boolean) cache.get (token);
+	Boolean		b;
 	boolean		retval;
 
+	if (firstSet != null)
+	    return firstSet.get (token) != null;
+
+	b = (Boolean) cache.get (token);
 	if (b != null)
 	    return b.booleanValue ();
 
@@ -230,15 +241,65 @@ final class ContentModel
 	}
 
 	// store the result, so we can be faster next time
-	if (retval)
-	    cache.put (token, Boolean.TRUE);
-	else
-	    cache.put (token, Boolean.FALSE);
+	cache.put (token, retval ? Boolean.TRUE : Boolean.FALSE);
 
 	return retval;
     }
 
 
+    /**
+     * Computes the sets of names which can be first in this model and
+     * those it contains, so that <em>first</em> needn't modify anything.
+     */
+    void compile ()
+    {
+	if (firstSet != null)
+	    return;
+	if (content instanceof ContentModel)
+	    ((ContentModel)content).compile ();
+	if (next != null)
+	    next.compile ();
+
+	firstSet = new SimpleHashtable ();
+	addFirst (this, firstSet);
+	cache = null;
+    }
+
+    // same logic as first (), for every name at once
+    private static void addFirst (ContentModel m, SimpleHashtable set)
+    {
+	for (; m != null; m = m.next) {
+	    if (m.content instanceof String) {
+		set.put ((String) m.content, Boolean.TRUE);
+		if (m.type == '|')
+		    continue;
+		return;
+	    }
+	    ContentModel	content = (ContentModel) m.content;
+
+	    addFirst (content, set);
+	    switch (m.type) {
+	      case '*':
+	      case '?':
+	      case '+':
+	      case 0:
+		return;
+
+	      case ',':
+		if (!content.empty ())
+		    return;
+		break;
+
+	      case '|':
+		break;
+
+	      default:
+		throw new InternalError ();
+	    }
+	}
+    }
+
+
     /**
      * Convert to a string (for debugging).
      *
@@ -59,6 +59,9 @@
 
 package org.apache.crimson.parser;
 
+import java.util.Enumeration;
+import java.util.Vector;
+
 
 /**
  * Represents all of the DTD information about an element.  That
@@ -111,6 +114,39 @@ class ElementDecl
     boolean		isFromInternalSubset;
     
     SimpleHashtable	attributes = new SimpleHashtable ();
+
+    // attributes which are defaulted or #REQUIRED; each one's index
+    // is its position here.  Rebuilt if attributes are declared later.
+    private AttributeDecl	plan [];
+    private int			plannedSize = -1;
     
     ElementDecl (String s) { name = s; }
+
+    /**
+     * Returns the attributes a start tag must be checked against
+     * when it omits them:  those with default values, and those
+     * which are #REQUIRED.
+     */
+    AttributeDecl [] getDefaultingPlan ()
+    {
+	if (plannedSize != attributes.size ()) {
+	    Vector		temp = new Vector ();
+	    Enumeration	e = attributes.sharedKeys ();
+
+	    while (e.hasMoreElements ()) {
+		AttributeDecl	attr;
+
+		attr = (AttributeDecl) attributes.get ((String) e.nextElement ());
+		if (attr.defaultValue != null || attr.isRequired) {
+		    attr.index = temp.size ();
+		    temp.addElement (attr);
+		} else
+		    attr.index = -1;
+	    }
+	    plan = new AttributeDecl [temp.size ()];
+	    temp.copyInto (plan);
+	    plannedSize = attributes.size ();
+	}
+	return plan;
+    }
 }    
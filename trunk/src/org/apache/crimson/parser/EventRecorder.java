@@ -0,0 +1,432 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import java.util.Hashtable;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+
+/**
+ * This class is a SAX2 handler which records the events reported while
+ * parsing a document, so that they can be replayed to other handlers
+ * without parsing the document again.  After each parse, the recording
+ * is available from <em>getRecording</em>.
+ *
+ * <P> Recordings are compact:  events are kept as integers in one
+ * array, with names and DTD strings stored once each as numbered
+ * symbols, and all character data, attribute values, and processing
+ * instruction data in one character array.  They
+ * are typically much smaller than a DOM tree for the same document.
+ *
+ * <P> To record a parse, register this as the content handler, lexical
+ * handler, and DTD handler of an XML reader:  <PRE>
+ *	EventRecorder recorder = new EventRecorder ();
+ *
+ *	reader.setContentHandler (recorder);
+ *	reader.setDTDHandler (recorder);
+ *	reader.setProperty ("http://xml.org/sax/properties/lexical-handler",
+ *		recorder);
+ *	reader.parse (input);
+ *	recording = recorder.getRecording ();
+ *	recording.replay (validator);
+ *	recording.replay (indexer, indexer, null);
+ * </PRE>
+ *
+ * <P> A recorder may be reused for later parses, but only one at a
+ * time; recordings are independent of it.
+ *
+ * @see EventRecording
+ * @version $Revision$
+ */
+public class EventRecorder implements ContentHandler, LexicalHandler, DTDHandler
+{
+    // used while recording
+    private int			events [];
+    private int			eventCount;
+    private int			lastText = -1;	// last CHARACTERS event
+    private int			open [];	// START_ELEMENT offsets
+    private int			depth;
+    private char		text [];
+    private int			textLength;
+    private String		symbols [];
+    private int			symbolCount;
+    private Hashtable		symbolIds;
+
+    private EventRecording	recording;
+
+
+    /**
+     * Constructs a recorder.
+     */
+    public EventRecorder () { }
+
+    /**
+     * Returns the recording made by the last parse, or null if none
+     * has completed.
+     */
+    public EventRecording getRecording ()
+    {
+	return recording;
+    }
+
+
+    // ContentHandler
+
+    public void setDocumentLocator (Locator locator) { }
+
+    public void startDocument ()
+    throws SAXException
+    {
+	events = new int [1024];
+	eventCount = 0;
+	open = new int [32];
+	depth = 0;
+	lastText = -1;
+	text = new char [4096];
+	textLength = 0;
+	symbols = new String [64];
+	symbolCount = 0;
+	symbolIds = new Hashtable ();
+	recording = null;
+
+	add (EventRecording.START_DOCUMENT);
+    }
+
+    public void endDocument ()
+    throws SAXException
+    {
+	int	eventsTemp [] = new int [eventCount + 1];
+	char	textTemp [] = new char [textLength];
+	String	symbolsTemp [] = new String [symbolCount];
+
+	add (EventRecording.END_DOCUMENT);
+	System.arraycopy (events, 0, eventsTemp, 0, eventCount);
+	System.arraycopy (text, 0, textTemp, 0, textLength);
+	System.arraycopy (symbols, 0, symbolsTemp, 0, symbolCount);
+	recording = new EventRecording (eventsTemp, textTemp, symbolsTemp);
+
+	events = null;
+	open = null;
+	text = null;
+	symbols = null;
+	symbolIds = null;
+    }
+
+    public void startPrefixMapping (String prefix, String uri)
+    throws SAXException
+    {
+	add (EventRecording.START_PREFIX_MAPPING);
+	add (symbol (prefix));
+	add (symbol (uri));
+    }
+
+    public void endPrefixMapping (String prefix)
+    throws SAXException
+    {
+	add (EventRecording.END_PREFIX_MAPPING);
+	add (symbol (prefix));
+    }
+
+    public void startElement (
+	String		uri,
+	String		localName,
+	String		qName,
+	Attributes	attributes
+    ) throws SAXException
+    {
+	int		length = attributes.getLength ();
+	AttributesEx	ex = null;
+
+	if (attributes instanceof AttributesEx)
+	    ex = (AttributesEx) attributes;
+
+	if (depth == open.length) {
+	    int		temp [] = new int [depth * 2];
+
+	    System.arraycopy (open, 0, temp, 0, depth);
+	    open = temp;
+	}
+	open [depth++] = eventCount;
+
+	add (EventRecording.START_ELEMENT);
+	add (symbol (uri));
+	add (symbol (localName));
+	add (symbol (qName));
+	add (symbol (ex == null ? null : ex.getIdAttributeName ()));
+	add (length);
+	for (int i = 0; i < length; i++) {
+	    add (symbol (attributes.getURI (i)));
+	    add (symbol (attributes.getLocalName (i)));
+	    add (symbol (attributes.getQName (i)));
+	    add (symbol (attributes.getType (i)));
+	    addText (attributes.getValue (i));
+	    if (ex == null) {
+		add (-1);
+		add (1);
+	    } else {
+		add (symbol (ex.getDefault (i)));
+		add (ex.isSpecified (i) ? 1 : 0);
+	    }
+	}
+    }
+
+    public void endElement (String uri, String localName, String qName)
+    throws SAXException
+    {
+	// the names are those of the matching start tag
+	add (EventRecording.END_ELEMENT);
+	add (open [--depth]);
+    }
+
+    public void characters (char buf [], int offset, int len)
+    throws SAXException
+    {
+	// parsers often split text; keep it as one event
+	if (lastText == eventCount - 3 && lastText >= 0) {
+	    addChars (buf, offset, len);
+	    events [eventCount - 1] += len;
+	    return;
+	}
+	add (EventRecording.CHARACTERS);
+	lastText = eventCount - 1;
+	add (textLength);
+	add (len);
+	addChars (buf, offset, len);
+    }
+
+    public void ignorableWhitespace (char buf [], int offset, int len)
+    throws SAXException
+    {
+	add (EventRecording.IGNORABLE_WHITESPACE);
+	add (textLength);
+	add (len);
+	addChars (buf, offset, len);
+    }
+
+    public void processingInstruction (String target, String data)
+    throws SAXException
+    {
+	add (EventRecording.PROCESSING_INSTRUCTION);
+	add (symbol (target));
+	addText (data);
+    }
+
+    public void skippedEntity (String name)
+    throws SAXException
+    {
+	add (EventRecording.SKIPPED_ENTITY);
+	add (symbol (name));
+    }
+
+
+    // LexicalHandler
+
+    public void startDTD (String name, String publicId, String systemId)
+    throws SAXException
+    {
+	add (EventRecording.START_DTD);
+	add (symbol (name));
+	add (symbol (publicId));
+	add (symbol (systemId));
+    }
+
+    public void endDTD ()
+    throws SAXException
+    {
+	add (EventRecording.END_DTD);
+    }
+
+    public void startEntity (String name)
+    throws SAXException
+    {
+	add (EventRecording.START_ENTITY);
+	add (symbol (name));
+    }
+
+    public void endEntity (String name)
+    throws SAXException
+    {
+	add (EventRecording.END_ENTITY);
+	add (symbol (name));
+    }
+
+    public void startCDATA ()
+    throws SAXException
+    {
+	add (EventRecording.START_CDATA);
+    }
+
+    public void endCDATA ()
+    throws SAXException
+    {
+	add (EventRecording.END_CDATA);
+    }
+
+    public void comment (char buf [], int offset, int len)
+    throws SAXException
+    {
+	add (EventRecording.COMMENT);
+	add (textLength);
+	add (len);
+	addChars (buf, offset, len);
+    }
+
+
+    // DTDHandler
+
+    public void notationDecl (String name, String publicId, String systemId)
+    throws SAXException
+    {
+	add (EventRecording.NOTATION_DECL);
+	add (symbol (name));
+	add (symbol (publicId));
+	add (symbol (systemId));
+    }
+
+    public void unparsedEntityDecl (
+	String		name,
+	String		publicId,
+	String		systemId,
+	String		notationName
+    ) throws SAXException
+    {
+	add (EventRecording.UNPARSED_ENTITY_DECL);
+	add (symbol (name));
+	add (symbol (publicId));
+	add (symbol (systemId));
+	add (symbol (notationName));
+    }
+
+
+    // Storage
+
+    private void add (int value)
+    {
+	if (eventCount == events.length) {
+	    int		temp [] = new int [eventCount * 2];
+
+	    System.arraycopy (events, 0, temp, 0, eventCount);
+	    events = temp;
+	}
+	events [eventCount++] = value;
+    }
+
+    private void addChars (char buf [], int offset, int len)
+    {
+	reserveText (len);
+	System.arraycopy (buf, offset, text, textLength, len);
+	textLength += len;
+    }
+
+    // Adds a string as an (offset, length) text slice
+    private void addText (String s)
+    {
+	if (s == null) {
+	    add (-1);
+	    add (0);
+	    return;
+	}
+
+	int	len = s.length ();
+
+	add (textLength);
+	add (len);
+	reserveText (len);
+	s.getChars (0, len, text, textLength);
+	textLength += len;
+    }
+
+    private void reserveText (int len)
+    {
+	if (textLength + len > text.length) {
+	    char	temp [] = new char [Math.max (text.length * 2,
+					textLength + len)];
+
+	    System.arraycopy (text, 0, temp, 0, textLength);
+	    text = temp;
+	}
+    }
+
+    // Returns the number for a name, assigning one if needed
+    private int symbol (String s)
+    {
+	if (s == null)
+	    return -1;
+
+	Integer	id = (Integer) symbolIds.get (s);
+
+	if (id != null)
+	    return id.intValue ();
+	if (symbolCount == symbols.length) {
+	    String	temp [] = new String [symbolCount * 2];
+
+	    System.arraycopy (symbols, 0, temp, 0, symbolCount);
+	    symbols = temp;
+	}
+	symbols [symbolCount] = s;
+	symbolIds.put (s, new Integer (symbolCount));
+	return symbolCount++;
+    }
+}
@@ -0,0 +1,427 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+
+/**
+ * An immutable recording of the SAX2 events reported while parsing one
+ * document, made by an {@link EventRecorder}.  Replaying it reports the
+ * same events, in the same order, to whatever handlers are given; so a
+ * document parsed once can be fed to several consumers, such as a
+ * validator, an indexer, and an archiver, one after the other.
+ *
+ * <P> Any number of threads may replay one recording at the same time.
+ * Character data is reported directly from the recording's buffer,
+ * which handlers must not modify.  Attributes are reported through
+ * an <em>AttributesEx</em> view, so a builder can still tell which
+ * attributes were defaulted from a DTD if the parser reported that.
+ * Names are reported as the same strings the parser used.  Adjacent
+ * character data may be reported in fewer calls than the parser used,
+ * and no document locator is provided.
+ *
+ * @see EventRecorder
+ * @version $Revision$
+ */
+public final class EventRecording
+{
+    // Events are a sequence of integers:  an event code, then its
+    // arguments.  Names and DTD strings are symbol numbers; other
+    // strings are slices of the text buffer (offset, length).  Either
+    // is -1 for null.
+    static final int	START_DOCUMENT = 1;		// -
+    static final int	END_DOCUMENT = 2;		// -
+    static final int	START_PREFIX_MAPPING = 3;	// prefix, uri
+    static final int	END_PREFIX_MAPPING = 4;		// prefix
+    static final int	START_ELEMENT = 5;		// uri, local, qName,
+							//   id name, count,
+							//   attributes ...
+    static final int	END_ELEMENT = 6;		// START_ELEMENT offset
+    static final int	CHARACTERS = 7;			// text
+    static final int	IGNORABLE_WHITESPACE = 8;	// text
+    static final int	PROCESSING_INSTRUCTION = 9;	// target, text
+    static final int	SKIPPED_ENTITY = 10;		// name
+    static final int	START_DTD = 11;			// name, public, system
+    static final int	END_DTD = 12;			// -
+    static final int	START_ENTITY = 13;		// name
+    static final int	END_ENTITY = 14;		// name
+    static final int	START_CDATA = 15;		// -
+    static final int	END_CDATA = 16;			// -
+    static final int	COMMENT = 17;			// text
+    static final int	NOTATION_DECL = 18;		// name, public, system
+    static final int	UNPARSED_ENTITY_DECL = 19;	// name, public, system,
+							//   notation
+
+    // Each attribute of a START_ELEMENT is described by:
+    static final int	ATTR_URI = 0;			// symbol
+    static final int	ATTR_LOCAL = 1;			// symbol
+    static final int	ATTR_QNAME = 2;			// symbol
+    static final int	ATTR_TYPE = 3;			// symbol
+    static final int	ATTR_VALUE = 4;			// text (2 ints)
+    static final int	ATTR_DEFAULT = 6;		// symbol
+    static final int	ATTR_SPECIFIED = 7;		// 0 or 1
+    static final int	ATTR_SIZE = 8;
+
+    private final int		events [];
+    private final char		text [];
+    private final String	symbols [];
+
+
+    // package private; arrays are owned by this object
+    EventRecording (int events [], char text [], String symbols [])
+    {
+	this.events = events;
+	this.text = text;
+	this.symbols = symbols;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the recording,
+     * not counting the strings for names.
+     */
+    public int getSize ()
+    {
+	return 4 * events.length + 2 * text.length + 4 * symbols.length;
+    }
+
+    /**
+     * Reports the recorded content events to the given handler.
+     *
+     * @exception SAXException as thrown by the handler
+     */
+    public void replay (ContentHandler handler)
+    throws SAXException
+    {
+	replay (handler, null, null);
+    }
+
+    /**
+     * Reports the recorded events to the given handlers, any of which
+     * may be null if its events aren't wanted.
+     *
+     * @exception SAXException as thrown by the handlers
+     */
+    public void replay (
+	ContentHandler	content,
+	LexicalHandler	lexical,
+	DTDHandler	dtd
+    ) throws SAXException
+    {
+	RecordedAttributes	attributes = null;
+	int			i = 0;
+
+	while (i < events.length) {
+	    int		event = events [i++];
+
+	    switch (event) {
+	      case START_DOCUMENT:
+		if (content != null)
+		    content.startDocument ();
+		break;
+
+	      case END_DOCUMENT:
+		if (content != null)
+		    content.endDocument ();
+		break;
+
+	      case START_PREFIX_MAPPING:
+		if (content != null)
+		    content.startPrefixMapping (symbol (events [i]),
+			    symbol (events [i + 1]));
+		i += 2;
+		break;
+
+	      case END_PREFIX_MAPPING:
+		if (content != null)
+		    content.endPrefixMapping (symbol (events [i]));
+		i += 1;
+		break;
+
+	      case START_ELEMENT:
+		int	count = events [i + 4];
+
+		if (content != null) {
+		    if (attributes == null)
+			attributes = new RecordedAttributes ();
+		    attributes.base = i + 5;
+		    attributes.length = count;
+		    attributes.idName = symbol (events [i + 3]);
+		    content.startElement (symbol (events [i]),
+			    symbol (events [i + 1]), symbol (events [i + 2]),
+			    attributes);
+		}
+		i += 5 + count * ATTR_SIZE;
+		break;
+
+	      case END_ELEMENT:
+		if (content != null) {
+		    int	start = events [i] + 1;
+
+		    content.endElement (symbol (events [start]),
+			    symbol (events [start + 1]),
+			    symbol (events [start + 2]));
+		}
+		i += 1;
+		break;
+
+	      case CHARACTERS:
+		if (content != null)
+		    content.characters (text, events [i], events [i + 1]);
+		i += 2;
+		break;
+
+	      case IGNORABLE_WHITESPACE:
+		if (content != null)
+		    content.ignorableWhitespace (text, events [i],
+			    events [i + 1]);
+		i += 2;
+		break;
+
+	      case PROCESSING_INSTRUCTION:
+		if (content != null)
+		    content.processingInstruction (symbol (events [i]),
+			    string (i + 1));
+		i += 3;
+		break;
+
+	      case SKIPPED_ENTITY:
+		if (content != null)
+		    content.skippedEntity (symbol (events [i]));
+		i += 1;
+		break;
+
+	      case START_DTD:
+		if (lexical != null)
+		    lexical.startDTD (symbol (events [i]),
+			    symbol (events [i + 1]), symbol (events [i + 2]));
+		i += 3;
+		break;
+
+	      case END_DTD:
+		if (lexical != null)
+		    lexical.endDTD ();
+		break;
+
+	      case START_ENTITY:
+		if (lexical != null)
+		    lexical.startEntity (symbol (events [i]));
+		i += 1;
+		break;
+
+	      case END_ENTITY:
+		if (lexical != null)
+		    lexical.endEntity (symbol (events [i]));
+		i += 1;
+		break;
+
+	      case START_CDATA:
+		if (lexical != null)
+		    lexical.startCDATA ();
+		break;
+
+	      case END_CDATA:
+		if (lexical != null)
+		    lexical.endCDATA ();
+		break;
+
+	      case COMMENT:
+		if (lexical != null)
+		    lexical.comment (text, events [i], events [i + 1]);
+		i += 2;
+		break;
+
+	      case NOTATION_DECL:
+		if (dtd != null)
+		    dtd.notationDecl (symbol (events [i]),
+			    symbol (events [i + 1]), symbol (events [i + 2]));
+		i += 3;
+		break;
+
+	      case UNPARSED_ENTITY_DECL:
+		if (dtd != null)
+		    dtd.unparsedEntityDecl (symbol (events [i]),
+			    symbol (events [i + 1]), symbol (events [i + 2]),
+			    symbol (events [i + 3]));
+		i += 4;
+		break;
+
+	      default:
+		throw new InternalError ();
+	    }
+	}
+    }
+
+    private String symbol (int id)
+    {
+	return (id < 0) ? null : symbols [id];
+    }
+
+    // the text slice whose offset is at events [i]
+    private String string (int i)
+    {
+	int	offset = events [i];
+
+	return (offset < 0) ? null : new String (text, offset, events [i + 1]);
+    }
+
+
+    //
+    // The attributes of the element being reported, read from the
+    // recording; one of these is used for each replay.
+    //
+    final class RecordedAttributes implements AttributesEx
+    {
+	int		base;
+	int		length;
+	String		idName;
+
+	private int field (int i, int field)
+	    { return events [base + i * ATTR_SIZE + field]; }
+
+	public int getLength ()
+	    { return length; }
+
+	public String getURI (int i)
+	{
+	    return (i < 0 || i >= length) ? null
+		: symbol (field (i, ATTR_URI));
+	}
+
+	public String getLocalName (int i)
+	{
+	    return (i < 0 || i >= length) ? null
+		: symbol (field (i, ATTR_LOCAL));
+	}
+
+	public String getQName (int i)
+	{
+	    return (i < 0 || i >= length) ? null
+		: symbol (field (i, ATTR_QNAME));
+	}
+
+	public String getType (int i)
+	{
+	    return (i < 0 || i >= length) ? null
+		: symbol (field (i, ATTR_TYPE));
+	}
+
+	public String getValue (int i)
+	{
+	    return (i < 0 || i >= length) ? null
+		: string (base + i * ATTR_SIZE + ATTR_VALUE);
+	}
+
+	public int getIndex (String uri, String localName)
+	{
+	    for (int i = 0; i < length; i++) {
+		String	s = getLocalName (i);
+
+		if (s != null && s.equals (localName)) {
+		    s = getURI (i);
+		    if (s != null && s.equals (uri))
+			return i;
+		}
+	    }
+	    return -1;
+	}
+
+	public int getIndex (String qName)
+	{
+	    for (int i = 0; i < length; i++) {
+		if (getQName (i).equals (qName))
+		    return i;
+	    }
+	    return -1;
+	}
+
+	public String getType (String uri, String localName)
+	    { return getType (getIndex (uri, localName)); }
+
+	public String getType (String qName)
+	    { return getType (getIndex (qName)); }
+
+	public String getValue (String uri, String localName)
+	    { return getValue (getIndex (uri, localName)); }
+
+	public String getValue (String qName)
+	    { return getValue (getIndex (qName)); }
+
+	public boolean isSpecified (int i)
+	{
+	    if (i < 0 || i >= length)
+		throw new ArrayIndexOutOfBoundsException (i);
+	    return field (i, ATTR_SPECIFIED) != 0;
+	}
+
+	public String getDefault (int i)
+	{
+	    if (i < 0 || i >= length)
+		return null;
+	    return symbol (field (i, ATTR_DEFAULT));
+	}
+
+	public String getIdAttributeName ()
+	    { return idName; }
+    }
+}
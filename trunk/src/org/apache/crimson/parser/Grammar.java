@@ -0,0 +1,180 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import org.apache.crimson.util.SymbolTable;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+
+/**
+ * The declarations of a DTD, compiled into a form which parsers on many
+ * threads can use at once without locking.  A grammar is never changed
+ * after it has been built:  parsers using it keep any declarations of
+ * their own (such as those in a document's internal subset) separately,
+ * and content models have their lookup tables computed in advance
+ * rather than filled in during validation.
+ *
+ * <P> Grammars are built by reading an external DTD subset, either with
+ * {@link #parseDTD} or through {@link BatchParser#setDTD}.  Documents
+ * whose DOCTYPE names that DTD, and which have no internal subset, then
+ * use the grammar instead of reading the DTD again.
+ *
+ * @version $Revision$
+ */
+public final class Grammar
+{
+    // the tables are never modified once the grammar is built
+    final SimpleHashtable       elements;
+    final Hashtable             notations;
+    final SimpleHashtable       entities;
+    final boolean               isStandalone;
+    final boolean               isValidating;
+    final SymbolTable           symbols;        // used for the names
+
+    private final String        publicId;
+    private final String        systemId;
+
+    /**
+     * Takes over the declarations of a parser, which must not modify
+     * them afterwards.
+     */
+    Grammar(
+        SimpleHashtable elements,
+        Hashtable notations,
+        SimpleHashtable entities,
+        boolean isStandalone,
+        boolean isValidating,
+        SymbolTable symbols,
+        String publicId,
+        String systemId
+    ) {
+        this.elements = elements;
+        this.notations = notations;
+        this.entities = entities;
+        this.isStandalone = isStandalone;
+        this.isValidating = isValidating;
+        this.symbols = symbols;
+        this.publicId = publicId;
+        this.systemId = systemId;
+
+        // precompute everything parsing would otherwise cache
+        for (Enumeration e = elements.keys(); e.hasMoreElements(); ) {
+            ElementDecl element = (ElementDecl) elements.get(
+                                        (String) e.nextElement());
+
+            if (element.model != null) {
+                element.model.compile();
+            }
+            element.getDefaultingPlan();
+        }
+    }
+
+    /**
+     * Reads an external DTD subset into a grammar, validating its
+     * declarations.
+     *
+     * @param input The DTD; its system ID should be the absolute URI
+     *  documents use to refer to it.
+     * @param resolver Used to resolve entities the DTD refers to, or
+     *  null to use a default {@link Resolver}.
+     * @param handler Receives errors found in the DTD, or null to
+     *  ignore those which aren't fatal.
+     */
+    public static Grammar parseDTD(
+        InputSource input,
+        EntityResolver resolver,
+        ErrorHandler handler
+    ) throws SAXException, IOException {
+        ValidatingParser parser = new ValidatingParser();
+
+        if (resolver != null) {
+            parser.setEntityResolver(resolver);
+        }
+        if (handler != null) {
+            parser.setErrorHandler(handler);
+        }
+        return parser.parseDTD(input);
+    }
+
+    /** Returns the public ID of the DTD, if it had one. */
+    public String getPublicId() {
+        return publicId;
+    }
+
+    /** Returns the system ID of the DTD, if it had one. */
+    public String getSystemId() {
+        return systemId;
+    }
+
+    // true if this grammar was read from the given external subset
+    boolean isDTD(ExternalEntity subset) {
+        if (systemId != null) {
+            return systemId.equals(subset.systemId);
+        }
+        return publicId != null && publicId.equals(subset.publicId);
+    }
+}
@@ -71,6 +71,7 @@ import java.net.URL;
 import java.util.Locale;
 
 import org.xml.sax.*;
+import org.xml.sax.ext.LexicalHandler;
 
 import org.apache.crimson.util.XmlChars;
 
@@ -93,10 +94,13 @@ import org.apache.crimson.util.XmlChars;
 final class InputEntity implements Locator
 {
     private int			start, finish;
+    private int			textStart;	// see scanTo ()
     private char		buf [];
     private int			lineNumber = 1;
     private boolean		returnedFirstHalf = false;
     private boolean		maybeInCRLF = false;
+    private int			moveFrom, dropped;	// see mapLineEnd ()
+    private int			bufSize;	// see keepText ()
 
     // name of entity (never main document or unnamed DTD PE)
     private String		name;
@@ -125,7 +129,9 @@ final class InputEntity implements Locator
     // nicely sized as we can make them.
     final private static int	BUFSIZ = 8 * 1024 + 1;
 
-    final private static char	newline [] = { '\n' };
+    // When coalescing, text runs longer than this are still reported
+    // in pieces, so huge ones aren't all held in the buffer.
+    final private static int	COALESCE_LIMIT = 64 * 1024;
 
     public static InputEntity getInputEntity (ErrorHandler h, Locale l)
     {
@@ -181,10 +187,36 @@ final class InputEntity implements Locator
     public void init(InputSource in, String name, InputEntity stack,
                      boolean isPE)
         throws IOException, SAXException
+    {
+	init (in, name, stack, isPE, BUFSIZ);
+    }
+
+    //
+    // as above, but short entities can use smaller buffers
+    //
+    void init(InputSource in, String name, InputEntity stack,
+                     boolean isPE, int size)
+        throws IOException, SAXException
     {
 	input = in;
 	this.isPE = isPE;
-	reader = in.getCharacterStream ();
+	reader = createReader (in);
+	next = stack;
+	buf = new char [Math.min (size, BUFSIZ)];
+	bufSize = buf.length;
+	this.name = name;
+	checkRecursion (stack);
+    }
+
+    //
+    // returns a reader for an external entity, autodetecting its
+    // character encoding unless the input source provides the reader
+    // or names the encoding
+    //
+    static Reader createReader (InputSource in)
+    throws IOException
+    {
+	Reader		reader = in.getCharacterStream ();
 
 	if (reader == null) {
 	    InputStream		bytes = in.getByteStream ();
@@ -214,12 +246,16 @@ final class InputEntity implements Locator
 	    else
 		reader = XmlReader.createReader (in.getByteStream ());
 	}
-	next = stack;
-	buf = new char [BUFSIZ];
-	this.name = name;
-	checkRecursion (stack);
+	return reader;
     }
 
+    //
+    // used when an entity's text starts partway through a larger
+    // document, so diagnostics report the right lines
+    //
+    void setLineNumber (int lineNumber)
+	{ this.lineNumber = lineNumber; }
+
     //
     // use this for an internal parsed entity; buffer is readonly
     //
@@ -443,11 +479,15 @@ final class InputEntity implements Locator
      * namely ampersand (&amp;amp;) and left angle bracket (&amp;lt;).
      *
      * <P> the document handler's characters() method is called
-     * on all the content found
+     * on all the content found.  Line ends are mapped to LF in the
+     * buffer, so they don't split the text.  When coalescing, text is
+     * also kept in the buffer when it's refilled, so each run of text
+     * is reported with one call, unless it's very long.
      */
     public boolean parsedContent (
 	ContentHandler		contentHandler,
-	ElementValidator	validator
+	ElementValidator	validator,
+	boolean			coalesce
     ) throws IOException, SAXException
     {
 	// [14] CharData ::= [^<&]* - ([^<&]* ']]>' [^<&]*)
@@ -459,16 +499,23 @@ final class InputEntity implements Locator
 
 	// deliver right out of the buffer, until delimiter, EOF,
 	// or error, refilling as we go
+	dropped = 0;
 	for (first = last = start, sawContent = false; ; last++) {
 
 	    // buffer empty?
 	    if (last >= finish) {
-		if (last > first) {
-		    validator.text ();
-		    contentHandler.characters (buf, first, last - first);
-		    sawContent = true;
-		    start = last;
+		if (keeping (coalesce, first, last) && last > first
+			&& reader != null && !isClosed) {
+		    last = keepText (first, last);
+		    first = start;
+		    if (last < finish) {
+			last--;		// incremented in loop
+			continue;
+		    }
 		}
+		if (characters (contentHandler, validator, first, last))
+		    sawContent = true;
+		start = last;
 		if (isEOF ())	// calls fillbuf
 		    return sawContent;
 		first = start;
@@ -514,17 +561,24 @@ final class InputEntity implements Locator
 		if (isInternal ())
 		    continue;
 
-		contentHandler.characters (buf, first, last - first);
-		contentHandler.characters (newline, 0, 1);
-		sawContent = true;
-		lineNumber++;
-		if (finish > (last + 1)) {
-		    if (buf [last + 1] == '\n')
-			last++;
-		} else {	// CR at end of buffer
-// XXX case not yet handled:  CRLF here will look like two lines
+		// CR at end of buffer:  get more data, to see if
+		// it's a CRLF, then look at it again
+		if ((last + 1) >= finish && reader != null && !isClosed) {
+		    if (keeping (coalesce, first, last))
+			last = keepText (first, last);
+		    else {
+			if (characters (contentHandler, validator,
+				first, last))
+			    sawContent = true;
+			start = last;
+			fillbuf ();
+			last = start;
+		    }
+		    first = start;
+		    last--;		// incremented in loop
+		    continue;
 		}
-		first = start = last + 1;
+		last = mapLineEnd (last);
 		continue;
 	    }
 
@@ -541,17 +595,18 @@ final class InputEntity implements Locator
 		  case 1:
 		    if (reader == null || isClosed)
 			continue;
-		    if (last == first)
-			throw new InternalError ("fillbuf");
-		    last--;
-		    if (last > first) {
-			validator.text ();
-			contentHandler.characters (buf, first, last - first);
-			sawContent = true;
+		    if (keeping (coalesce, first, last))
+			last = keepText (first, last);
+		    else {
+			if (characters (contentHandler, validator,
+				first, last))
+			    sawContent = true;
 			start = last;
+			fillbuf ();
+			last = start;
 		    }
-		    fillbuf ();
-		    first = last = start;
+		    first = start;
+		    last--;		// incremented in loop
 		    continue;
 
 		  // otherwise any "]]>" would be buffered, and we can
@@ -566,18 +621,23 @@ final class InputEntity implements Locator
 	    // correctly paired surrogates are OK
 	    if (c >= 0xd800 && c <= 0xdfff) {
 		if ((last + 1) >= finish) {
-		    if (last > first) {
-			validator.text ();
-			contentHandler.characters (buf, first, last - first);
-			sawContent = true;
-			start = last + 1;
+		    // get the rest of the pair, then look again
+		    if (keeping (coalesce, first, last))
+			last = keepText (first, last);
+		    else {
+			if (characters (contentHandler, validator,
+				first, last))
+			    sawContent = true;
+			start = last;
+			fillbuf ();
+			last = start;
 		    }
-		    if (isEOF ()) {	// calls fillbuf
+		    if ((finish - last) < 2) {
 	    	       fatal ("P-081", 
 			      new Object [] { Integer.toHexString (c) });
 		    }
 		    first = start;
-		    last = first ;
+		    last--;		// incremented in loop
 		    continue;
 		}
 		if (checkSurrogatePair (last))
@@ -592,14 +652,94 @@ final class InputEntity implements Locator
 
 	    fatal ("P-071", new Object [] { Integer.toHexString (c) });
 	}
+	if (characters (contentHandler, validator, first, last))
+	    sawContent = true;
+	start = last;
+	return sawContent;
+    }
+
+    // reports text from "first" to "last", once line ends are mapped
+    private boolean characters (
+	ContentHandler		contentHandler,
+	ElementValidator	validator,
+	int			first,
+	int			last
+    ) throws SAXException
+    {
+	last = textEnd (last);
 	if (last == first)
-	    return sawContent;
+	    return false;
 	validator.text ();
 	contentHandler.characters (buf, first, last - first);
-	start = last;
 	return true;
     }
 
+    //
+    // Line ends in external entities are mapped in the buffer:  CR
+    // becomes LF, and the LF after it in a CRLF is dropped by moving
+    // the text after it down.  Text from "moveFrom" to the current
+    // position still has to move down "dropped" chars.
+    //
+    // Maps the CR at "last" to LF, returning the index of the last
+    // char in the line end.
+    private int mapLineEnd (int last)
+    {
+	if (dropped != 0)
+	    System.arraycopy (buf, moveFrom, buf, moveFrom - dropped,
+		last - moveFrom);
+	buf [last - dropped] = '\n';
+	lineNumber++;
+	if ((last + 1) < finish && buf [last + 1] == '\n') {
+	    dropped++;
+	    last++;
+	}
+	moveFrom = last + 1;
+	return last;
+    }
+
+    // Finishes moving text down over dropped chars, returning the
+    // end of the text which ran up to "last".
+    private int textEnd (int last)
+    {
+	if (dropped != 0) {
+	    System.arraycopy (buf, moveFrom, buf, moveFrom - dropped,
+		last - moveFrom);
+	    last -= dropped;
+	    dropped = 0;
+	}
+	return last;
+    }
+
+    // True if text from "first" to "last" should be kept in the buffer
+    // while it's refilled, rather than reported now
+    private boolean keeping (boolean coalesce, int first, int last)
+	{ return coalesce && (last - first) < COALESCE_LIMIT; }
+
+    // Keeps text being scanned (from "first" to "last", and anything
+    // buffered after it) while more is read, growing the buffer if
+    // it's full.  Returns where scanning continues; the text then
+    // begins at "start".  Once the text is reported, fillbuf() gives
+    // the buffer its usual size again.
+    private int keepText (int first, int last)
+    throws IOException, SAXException
+    {
+	int		end = textEnd (last);
+
+	if (end != last) {
+	    System.arraycopy (buf, last, buf, end, finish - last);
+	    finish -= last - end;
+	}
+	start = first;
+	if ((finish - start) + 1 >= buf.length) {
+	    char	temp [] = new char [2 * buf.length];
+
+	    System.arraycopy (buf, 0, temp, 0, finish);
+	    buf = temp;
+	}
+	fillbuf ();
+	return start + (end - first);
+    }
+
 
     /**
      * CDATA -- character data, terminated by "]]>" and optionally
@@ -637,6 +777,7 @@ final class InputEntity implements Locator
 	// only a literal ']]>' stops this ...
 	int	last;
 
+	dropped = 0;
 	for (;;) {		// until ']]>' seen
 	    boolean	done = false;
 	    char	c;
@@ -657,10 +798,8 @@ final class InputEntity implements Locator
 			if (checkSurrogatePair (last)) {
 			    last++;
 			    continue;
-			} else {
-			    last--;
-			    break;
-			}
+			} else
+			    break;	// report what's before it
 		    }
 		    fatal ("P-071", new Object []
 			{ Integer.toHexString (buf [last]) });
@@ -675,28 +814,11 @@ final class InputEntity implements Locator
 		    if (isInternal ())
 			continue;
 
-		    if (white) {
-			if (whitespaceInvalidMessage != null)
-			    errHandler.error (new SAXParseException (
-				Parser2.messages.getMessage (locale,
-					whitespaceInvalidMessage),
-				this));
-			contentHandler.ignorableWhitespace (buf, start,
-				last - start);
-			contentHandler.ignorableWhitespace (newline, 0, 1);
-		    } else {
-			validator.text ();
-			contentHandler.characters (buf, start, last - start);
-			contentHandler.characters (newline, 0, 1);
-		    }
-		    lineNumber++;
-		    if (finish > (last + 1)) {
-			if (buf [last + 1] == '\n')
-			    last++;
-		    } else {	// CR at end of buffer
-// XXX case not yet handled ... as above
-		    }
-		    start = last + 1;
+		    // CR at end of buffer:  report what we have, then
+		    // see if it's a CRLF after reading more
+		    if ((last + 1) >= finish && reader != null && !isClosed)
+			break;
+		    last = mapLineEnd (last);
 		    continue;
 		}
 		if (c != ']') {
@@ -720,16 +842,17 @@ final class InputEntity implements Locator
                     break;
 		}
 	    }
+	    int		end = textEnd (last);
+
 	    if (white) {
 		if (whitespaceInvalidMessage != null)
-		    errHandler.error (new SAXParseException (
-			Parser2.messages.getMessage (locale,
-				whitespaceInvalidMessage),
-			this));
-		contentHandler.ignorableWhitespace (buf, start, last - start);
+		    errHandler.error (new ParseDiagnostic (
+			Parser2.messages, locale,
+			whitespaceInvalidMessage, null, this, null));
+		contentHandler.ignorableWhitespace (buf, start, end - start);
 	    } else {
 		validator.text ();
-		contentHandler.characters (buf, start, last - start);
+		contentHandler.characters (buf, start, end - start);
 	    }
 	    if (done) {
 		start = last + 3;
@@ -742,6 +865,165 @@ final class InputEntity implements Locator
 	}
     }
 
+    /**
+     * Scans the text of a comment, whose "&lt;!--" the caller consumed,
+     * through its closing "--&gt;".  The text is reported to the handler
+     * straight from the buffer if it lies there, else from the text
+     * saved in <em>saved</em>; a null handler means the text is only
+     * checked.  Returns false if the entity ends first, with text seen
+     * so far appended to <em>saved</em>, so that a comment can continue
+     * after a parameter entity ends.
+     */
+    public boolean scanComment (
+	LexicalHandler		handler,
+	StringBuffer		saved
+    ) throws IOException, SAXException
+    {
+	// [15] Comment ::= '<!--'
+	//		( (Char - '-') | ('-' (Char - '-'))*
+	//		'-->'
+	int	end = scanTo ('-', (handler != null) ? saved : null);
+
+	if (end < 0)
+	    return false;
+	if (handler == null)
+	    return true;
+	if (saved.length () == 0)
+	    handler.comment (buf, textStart, end - textStart);
+	else {
+	    char	text [];
+
+	    saved.append (buf, textStart, end - textStart);
+	    text = new char [saved.length ()];
+	    saved.getChars (0, text.length, text, 0);
+	    handler.comment (text, 0, text.length);
+	}
+	return true;
+    }
+
+    /**
+     * Scans the data of a processing instruction through its closing
+     * "?&gt;", returning it as a string, or an empty string if
+     * <em>keepData</em> is false.  Returns null if the entity ends first.
+     */
+    public String scanPI (boolean keepData)
+    throws IOException, SAXException
+    {
+	// [16] PI ::= '<?' PITarget (S (Char* - (Char* '?>' Char*)))? '?>'
+	StringBuffer	saved = keepData ? new StringBuffer (0) : null;
+	int		end = scanTo ('?', saved);
+
+	if (end < 0)
+	    return null;
+	if (!keepData)
+	    return "";
+	if (saved.length () == 0)
+	    return new String (buf, textStart, end - textStart);
+	saved.append (buf, textStart, end - textStart);
+	return saved.toString ();
+    }
+
+    // Scans the buffer for "-->" or "?>", checking characters and
+    // counting lines as getc() does but without copying anything.
+    // Returns the end of the text preceding the delimiter, which starts
+    // at "textStart", having consumed the delimiter; or -1 at the end
+    // of the entity.  Text the buffer can't hold (or which needs line
+    // ends mapped) is appended to "saved", when that's not null.
+    private int scanTo (char delim, StringBuffer saved)
+    throws IOException, SAXException
+    {
+	int	last;
+	int	extra = (delim == '-') ? 2 : 1;
+
+	textStart = start;
+	for (;;) {
+	    for (last = start; last < finish; last++) {
+		char	c = buf [last];
+
+		if (c == delim) {
+		    if ((last + extra) >= finish)
+			break;
+		    if (delim == '?') {
+			if (buf [last + 1] == '>') {
+			    start = last + 2;
+			    return last;
+			}
+		    } else if (buf [last + 1] == '-') {
+			if (buf [last + 2] != '>') {
+			    start = last + 2;
+			    fatal ("P-008", new Object [] {
+				new Character ('>'),
+				Parser2.messages.getMessage (locale, "F-022"),
+				""
+			    });
+			}
+			start = last + 3;
+			return last;
+		    }
+		    continue;
+		}
+		if ((c >= 0x0020 && c <= 0xD7FF)
+			|| c == 0x0009
+			|| (c >= 0xE000 && c <= 0xFFFD))
+		    continue;
+		if (c == '\n') {
+		    if (!isInternal ())
+			lineNumber++;
+		    continue;
+		}
+		if (c == '\r') {
+		    // internal entities were mapped already
+		    if (isInternal ())
+			continue;
+		    // need to see if it's a CRLF
+		    if ((last + 1) >= finish)
+			break;
+		    lineNumber++;
+		    if (saved != null) {
+			saved.append (buf, textStart, last - textStart);
+			saved.append ('\n');
+		    }
+		    if (buf [last + 1] == '\n')
+			last++;
+		    textStart = last + 1;
+		    continue;
+		}
+		if (c >= 0xd800 && c < 0xdc00) {
+		    if ((last + 1) >= finish)
+			break;
+		    c = buf [last + 1];
+		    if (c >= 0xdc00 && c <= 0xdfff) {
+			last++;
+			continue;
+		    }
+		    fatal ("P-070", new Object [] { Integer.toHexString (c) });
+		}
+		fatal ("P-071", new Object [] { Integer.toHexString (c) });
+	    }
+
+	    // need more text:  save what we've seen, and refill
+	    if (saved != null)
+		saved.append (buf, textStart, last - textStart);
+	    start = last;
+	    int		pending = finish - start;
+
+	    fillbuf ();
+	    if ((finish - start) == pending) {
+		// end of entity; a trailing CR still ends a line
+		if (pending != 0 && buf [start] == '\r' && !isInternal ()) {
+		    lineNumber++;
+		    if (saved != null)
+			saved.append ('\n');
+		} else if (saved != null)
+		    saved.append (buf, start, pending);
+		start = finish;
+		return -1;
+	    }
+	    textStart = start;
+	}
+    }
+
+
     // return false to backstep at end of buffer)
     private boolean checkSurrogatePair (int offset)
     throws SAXException
@@ -776,10 +1058,10 @@ final class InputEntity implements Locator
 	int	first;
 
 	// [3] S ::= #20 | #09 | #0D | #0A
+	dropped = 0;
 	for (first = start;;) {
 	    if (finish <= start) {
-		if (isSpace)
-		    handler.ignorableWhitespace (buf, first, start - first);
+		whitespace (handler, first);
 		fillbuf ();
 		first = start;
 	    }
@@ -800,25 +1082,40 @@ final class InputEntity implements Locator
 
 	      case '\r':
 		isSpace = true;
-		if (!isInternal ())
-		    lineNumber++;
-		handler.ignorableWhitespace (buf, first,
-		    (start - 1) - first);
-		handler.ignorableWhitespace (newline, 0, 1);
-		if (start < finish && buf [start] == '\n')
-		    ++start;
-		first = start;
+		if (isInternal ())
+		    continue;
+
+		// CR at end of buffer:  get more data, to see
+		// if it's a CRLF, then look at it again
+		if (start >= finish && reader != null && !isClosed) {
+		    start--;
+		    whitespace (handler, first);
+		    fillbuf ();
+		    first = start;
+		    continue;
+		}
+		start = mapLineEnd (start - 1) + 1;
 		continue;
 
 	      default:
 		ungetc ();
-		if (isSpace)
-		    handler.ignorableWhitespace (buf, first, start - first);
+		whitespace (handler, first);
 		return isSpace;
 	    }
 	}
     }
 
+    // reports whitespace from "first" to "start", once line ends
+    // are mapped
+    private void whitespace (ContentHandler handler, int first)
+    throws SAXException
+    {
+	int	end = textEnd (start);
+
+	if (end > first)
+	    handler.ignorableWhitespace (buf, first, end - first);
+    }
+
     /**
      * returns false iff 'next' string isn't as provided,
      * else skips that text and returns true
@@ -1059,7 +1356,14 @@ final class InputEntity implements Locator
 	    start--;
 	len = finish - start;
 
-	System.arraycopy (buf, start, buf, 0, len);
+	// release a buffer grown to keep text, once that's been reported
+	if (buf.length > bufSize && len < bufSize / 2) {
+	    char	temp [] = new char [bufSize];
+
+	    System.arraycopy (buf, start, temp, 0, len);
+	    buf = temp;
+	} else
+	    System.arraycopy (buf, start, buf, 0, len);
 	start = 0;
 	finish = len;
 
@@ -1097,9 +1401,8 @@ final class InputEntity implements Locator
 
     private void fatal (String messageId, Object params []) throws SAXException
     {
-	SAXParseException	x = new SAXParseException (
-	    Parser2.messages.getMessage (locale, messageId, params),
-	    this);
+	SAXParseException	x = new ParseDiagnostic (
+	    Parser2.messages, locale, messageId, params, this, null);
 
 	// not continuable ... e.g. WF errors
 	close ();
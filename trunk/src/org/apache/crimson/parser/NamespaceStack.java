@@ -0,0 +1,242 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import org.apache.crimson.util.SymbolTable;
+import org.apache.crimson.util.XmlNames;
+
+
+/**
+ * This class tracks namespace declarations while parsing, as SAX2's
+ * <em>NamespaceSupport</em> does, but without allocating objects as
+ * elements are entered and names are resolved.  Bindings are kept in
+ * flat arrays, searched from the innermost declaration outwards; there
+ * are seldom more than a few of them in scope.  The split of each
+ * qualified name into prefix and local part is computed once per parse
+ * and cached, since it doesn't depend on the context.
+ *
+ * <P> Names passed in must be canonical (interned, or from the shared
+ * symbol table) as the parser's names are.  URIs and name parts it
+ * returns are canonical too.
+ *
+ * @version $Revision$
+ */
+final class NamespaceStack
+{
+    // in-scope bindings, innermost last; prefix "" is the default
+    private String		prefixes [] = new String [16];
+    private String		uris [] = new String [16];
+    private int			count;
+
+    // for each open context, the number of bindings outside it
+    private int			contexts [] = new int [32];
+    private int			depth;
+
+    // qName --> { prefix (or null), local part }
+    private SimpleHashtable	splits = new SimpleHashtable (47);
+
+    private SymbolTable		symbols;
+    private String		xmlPrefix;
+
+
+    NamespaceStack (SymbolTable symbols)
+    {
+	this.symbols = symbols;
+	xmlPrefix = intern ("xml");
+	reset ();
+    }
+
+    /** Forgets all contexts, leaving only the "xml" binding. */
+    void reset ()
+    {
+	count = 0;
+	depth = 0;
+	prefixes [0] = xmlPrefix;
+	uris [0] = intern (XmlNames.SPEC_XML_URI);
+	count = 1;
+    }
+
+    void pushContext ()
+    {
+	if (depth == contexts.length) {
+	    int		temp [] = new int [2 * depth];
+
+	    System.arraycopy (contexts, 0, temp, 0, depth);
+	    contexts = temp;
+	}
+	contexts [depth++] = count;
+    }
+
+    void popContext ()
+    {
+	// drop references, so URIs can be collected
+	int		start = contexts [--depth];
+
+	while (count > start) {
+	    count--;
+	    prefixes [count] = null;
+	    uris [count] = null;
+	}
+    }
+
+    /**
+     * Declares a prefix in the current context, returning false if
+     * it's one of the prefixes ("xml" and "xmlns") which can't be
+     * declared.
+     */
+    boolean declarePrefix (String prefix, String uri)
+    {
+	if ("xml".equals (prefix) || "xmlns".equals (prefix))
+	    return false;
+
+	if (count == prefixes.length) {
+	    String	temp [] = new String [2 * count];
+
+	    System.arraycopy (prefixes, 0, temp, 0, count);
+	    prefixes = temp;
+	    temp = new String [2 * count];
+	    System.arraycopy (uris, 0, temp, 0, count);
+	    uris = temp;
+	}
+	prefixes [count] = intern (prefix);
+	uris [count] = intern (uri);
+	count++;
+	return true;
+    }
+
+    /** Returns the number of prefixes declared in the current context. */
+    int getDeclaredCount ()
+    {
+	return count - contexts [depth - 1];
+    }
+
+    /** Returns a prefix declared in the current context. */
+    String getDeclaredPrefix (int index)
+    {
+	return prefixes [contexts [depth - 1] + index];
+    }
+
+    /** Returns the URI bound to the prefix, or null. */
+    String getURI (String prefix)
+    {
+	for (int i = count - 1; i >= 0; i--) {
+	    if (prefixes [i] == prefix || prefixes [i].equals (prefix))
+		return uris [i];
+	}
+	return null;
+    }
+
+    /** Returns the canonical local part of a qualified name. */
+    String getLocalName (String qName)
+    {
+	return split (qName) [1];
+    }
+
+    /**
+     * Fills in the URI, local part, and qualified name of the given
+     * name, as <em>NamespaceSupport.processName</em> does; returns
+     * null if the name uses an undeclared prefix.
+     */
+    String [] processName (String qName, String parts [], boolean isAttribute)
+    {
+	String		split [] = split (qName);
+	String		uri;
+
+	if (split [0] == null) {
+	    // unprefixed attributes have no namespace
+	    uri = isAttribute ? null : getURI ("");
+	    if (uri == null)
+		uri = "";
+	} else {
+	    // "xmlns=''" undeclares the default; it binds nothing
+	    uri = getURI (split [0]);
+	    if (uri == null || (uri.length () == 0 && split [0].length () == 0))
+		return null;
+	}
+
+	parts [0] = uri;
+	parts [1] = split [1];
+	parts [2] = qName;
+	return parts;
+    }
+
+    private String [] split (String qName)
+    {
+	String		split [] = (String []) splits.get (qName);
+
+	if (split == null) {
+	    int		index = qName.indexOf (':');
+
+	    split = new String [2];
+	    if (index < 0)
+		split [1] = qName;
+	    else {
+		split [0] = intern (qName.substring (0, index));
+		split [1] = intern (qName.substring (index + 1));
+	    }
+	    splits.put (qName, split);
+	}
+	return split;
+    }
+
+    private String intern (String s)
+    {
+	return (symbols != null) ? symbols.intern (s) : s.intern ();
+    }
+}
@@ -0,0 +1,468 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.Vector;
+import java.util.concurrent.Executor;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+
+/**
+ * Parses large record-oriented documents using several threads.  Such
+ * documents have a document element whose child elements ("records")
+ * are independent of each other, such as database exports or logs.
+ *
+ * <P> The prologue, including any DTD, is parsed once.  The rest of
+ * the input is then split at record boundaries, and groups of records
+ * are parsed concurrently as tasks on the <code>Executor</code>
+ * provided by the caller.  All those parsers share the declarations
+ * from the DTD, so entities and attribute defaults work as usual.
+ * Each record is reported as a complete document to a handler supplied
+ * by the {@link RecordListener}, and records are handed back to the
+ * listener in document order (or as they finish, if preferred).
+ *
+ * <P> Some restrictions apply:  the parse is not validating; only
+ * whitespace, comments and processing instructions may appear between
+ * records; and events for the document element itself, and for
+ * anything outside it, are not reported.  The namespace declarations
+ * and other attributes of the document element are available from
+ * <em>getRootAttributes</em>, and its namespace declarations are in
+ * scope for every record; each record's handler sees them as prefix
+ * mappings around the record.  The error handler and entity resolver are
+ * used by several threads at once.
+ *
+ * @version $Revision$
+ */
+public class ParallelRecordParser
+{
+    private Executor            executor;
+
+    // parsing modes
+    private boolean             namespaces = true;
+    private boolean             ordered = true;
+    private int                 chunkSize = 64 * 1024;
+    private int                 maxPending = 16;
+    private EntityResolver      resolver;
+    private ErrorHandler        errHandler;
+    private Locale              locale;
+
+    // used during parsing
+    private RecordListener      listener;
+    private Grammar             grammar;
+    private InputSource         input;
+    private String              bindings [];
+    private Attributes          rootAttributes;
+    private boolean             aborted;
+
+
+    /**
+     * Constructs a parser which runs its tasks on the given executor.
+     */
+    public ParallelRecordParser(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Controls whether namespace processing is done; by default it is.
+     */
+    public void setNamespaceAware(boolean value) {
+        namespaces = value;
+    }
+
+    /**
+     * Controls whether records are handed back in document order (the
+     * default), or as soon as they have been parsed.
+     */
+    public void setOrdered(boolean value) {
+        ordered = value;
+    }
+
+    /**
+     * Assigns the approximate number of characters of records to be
+     * parsed by each task.
+     */
+    public void setChunkSize(int chars) {
+        if (chars < 1) {
+            throw new IllegalArgumentException();
+        }
+        chunkSize = chars;
+    }
+
+    /**
+     * Assigns how many tasks may be outstanding at once, which bounds
+     * the memory used for records waiting to be parsed or handed back.
+     */
+    public void setMaxPendingTasks(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException();
+        }
+        maxPending = count;
+    }
+
+    public void setEntityResolver(EntityResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    public void setErrorHandler(ErrorHandler handler) {
+        errHandler = handler;
+    }
+
+    /**
+     * Assigns the locale used for diagnostics, or null for the default
+     * locale.  Unsupported locales are reported when parsing starts.
+     */
+    public void setLocale(Locale locale) {
+        this.locale = locale;
+    }
+
+    /**
+     * Returns the attributes of the document element of the document
+     * being (or last) parsed, or null if none was found yet.
+     */
+    public Attributes getRootAttributes() {
+        return rootAttributes;
+    }
+
+    /**
+     * Parses the document, returning after every record has been
+     * handed back to the listener.  The first error reported by any
+     * task ends the parse.
+     */
+    public void parse(InputSource input, RecordListener listener)
+        throws SAXException, IOException
+    {
+        Vector pending = new Vector();
+
+        this.input = input;
+        this.listener = listener;
+        aborted = false;
+        rootAttributes = null;
+        try {
+            RecordSplitter splitter = new RecordSplitter(
+                InputEntity.createReader(input),
+                input.getPublicId(), input.getSystemId(),
+                locale, chunkSize + chunkSize / 4);
+
+            parsePrologue(splitter.readPrologue());
+
+            long index = 0;
+            Chunk chunk = new Chunk(index);
+            for (;;) {
+                int offset = splitter.getLength();
+                if (!splitter.nextRecord()) {
+                    break;
+                }
+                index++;
+                chunk.add(offset, splitter.getRecordLine());
+                if (splitter.getLength() >= chunkSize) {
+                    chunk.finish(splitter);
+                    executor.execute(chunk);
+                    pending.addElement(chunk);
+                    deliver(pending, maxPending);
+                    chunk = new Chunk(index);
+                }
+            }
+            if (chunk.count != 0) {
+                chunk.finish(splitter);
+                executor.execute(chunk);
+                pending.addElement(chunk);
+            }
+            deliver(pending, 0);
+
+        } finally {
+            if (!pending.isEmpty()) {
+                // let outstanding tasks stop before returning
+                synchronized (this) {
+                    aborted = true;
+                }
+                awaitAll(pending);
+            }
+            this.input = null;
+            this.listener = null;
+            grammar = null;
+            bindings = null;
+        }
+    }
+
+    // parses the prologue, keeping its declarations for the records
+    private void parsePrologue(char text [])
+        throws SAXException, IOException
+    {
+        RootHandler handler = new RootHandler();
+        InputSource in = new InputSource(new CharArrayReader(text));
+
+        in.setPublicId(input.getPublicId());
+        in.setSystemId(input.getSystemId());
+
+        Parser2 prologue = new Parser2();
+
+        prologue.setNamespaceFeatures(namespaces, false);
+        prologue.setRetainDeclarations(true);
+        prologue.setContentHandler(handler);
+        prologue.setErrorHandler(errHandler);
+        prologue.setEntityResolver(resolver);
+        prologue.setLocale(locale);
+        prologue.parse(in);
+        grammar = prologue.getGrammar(null, null);
+
+        bindings = new String [handler.bindings.size()];
+        handler.bindings.copyInto(bindings);
+        rootAttributes = handler.attributes;
+    }
+
+    // hands back finished tasks, waiting while "limit" or more remain
+    private void deliver(Vector pending, int limit)
+        throws SAXException, IOException
+    {
+        for (;;) {
+            Chunk chunk = null;
+
+            synchronized (this) {
+                for (int i = 0; i < pending.size(); i++) {
+                    Chunk temp = (Chunk) pending.elementAt(i);
+                    if (temp.done) {
+                        chunk = temp;
+                        break;
+                    }
+                    if (ordered) {
+                        break;
+                    }
+                }
+                if (chunk == null) {
+                    if (pending.isEmpty() || pending.size() < limit) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                    continue;
+                }
+                pending.removeElement(chunk);
+            }
+            chunk.report();
+        }
+    }
+
+    // waits for tasks to finish, without handing them back
+    private synchronized void awaitAll(Vector pending) {
+        boolean interrupted = false;
+
+        for (int i = 0; i < pending.size(); i++) {
+            while (!((Chunk) pending.elementAt(i)).done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        pending.removeAllElements();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    private synchronized void completed(Chunk chunk) {
+        chunk.done = true;
+        notifyAll();
+    }
+
+
+    /**
+     * A group of consecutive records, parsed as one task.
+     */
+    private final class Chunk implements Runnable
+    {
+        private long            first;
+        private int             count;
+        private int             offsets [] = new int [16];
+        private int             lines [] = new int [16];
+        private char            text [];
+        private int             length;
+
+        // results, guarded by the parser's lock
+        private ContentHandler  handlers [];
+        private Throwable       failure;
+        boolean                 done;
+
+        Chunk(long first) {
+            this.first = first;
+        }
+
+        // notes where a record starts in the collected text
+        void add(int offset, int line) {
+            if (count == offsets.length) {
+                int temp [] = new int [count * 2];
+                System.arraycopy(offsets, 0, temp, 0, count);
+                offsets = temp;
+                temp = new int [count * 2];
+                System.arraycopy(lines, 0, temp, 0, count);
+                lines = temp;
+            }
+            offsets[count] = offset;
+            lines[count++] = line;
+        }
+
+        // takes the text of all the records
+        void finish(RecordSplitter splitter) {
+            length = splitter.getLength();
+            text = splitter.takeText();
+        }
+
+        public void run() {
+            try {
+                if (!isAborted()) {
+                    parse();
+                }
+            } catch (Throwable e) {
+                // Errors too; report() must never see partial results
+                failure = e;
+            } finally {
+                text = null;
+                completed(this);
+            }
+        }
+
+        private void parse() throws SAXException, IOException {
+            Parser2 parser = new Parser2();
+
+            parser.setNamespaceFeatures(namespaces, false);
+            parser.setErrorHandler(errHandler);
+            parser.setEntityResolver(resolver);
+            parser.setLocale(locale);
+            parser.useGrammar(grammar);
+
+            handlers = new ContentHandler [count];
+            for (int i = 0; i < count && !isAborted(); i++) {
+                int end = (i + 1 < count) ? offsets[i + 1] : length;
+                ContentHandler handler = listener.startRecord(first + i);
+
+                parser.setContentHandler(handler);
+                parser.setLexicalHandler(handler instanceof LexicalHandler
+                                         ? (LexicalHandler) handler
+                                         : null);
+                parser.parseRecord(text, offsets[i], end - offsets[i], input,
+                                   lines[i], bindings);
+                handlers[i] = handler;
+            }
+        }
+
+        // hands the records back to the listener
+        void report() throws SAXException, IOException {
+            if (failure instanceof SAXException) {
+                throw (SAXException) failure;
+            } else if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            for (int i = 0; i < count; i++) {
+                listener.endRecord(first + i, handlers[i]);
+                handlers[i] = null;
+            }
+        }
+    }
+
+
+    /**
+     * Collects the document element's attributes and namespace
+     * declarations while the prologue is parsed.
+     */
+    private static final class RootHandler extends DefaultHandler
+    {
+        Vector          bindings = new Vector();
+        Attributes      attributes;
+
+        public void startPrefixMapping(String prefix, String uri) {
+            bindings.addElement(prefix);
+            bindings.addElement(uri);
+        }
+
+        public void startElement(String uri, String localName,
+                                 String qName, Attributes atts)
+        {
+            attributes = new AttributesImpl(atts);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Locale;
+
+import org.apache.crimson.util.MessageCatalog;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXParseException;
+
+
+/**
+ * A parse exception carrying the identifier and parameters of its
+ * diagnostic message, rather than the message text.  The text is only
+ * formatted (and then remembered) when <em>getMessage</em> is called,
+ * so documents with many recoverable errors are cheap to process when
+ * the error handler doesn't look at the messages.  Error handlers may
+ * also use the message identifier to classify the problem.
+ *
+ * @version $Revision$
+ */
+public class ParseDiagnostic extends SAXParseException
+{
+    private static final long serialVersionUID = 1L;
+
+    private transient MessageCatalog catalog;
+    private transient Locale locale;
+    private String messageId;
+    private Object parameters[];
+    private String message;
+
+    ParseDiagnostic(
+        MessageCatalog catalog,
+        Locale locale,
+        String messageId,
+        Object parameters[],
+        Locator locator,
+        Exception e
+    ) {
+        super(null, locator, e);
+        this.catalog = catalog;
+        this.locale = locale;
+        this.messageId = messageId;
+
+        // Parameters the parser may change before the message is
+        // formatted are turned into strings now, in a copy; the caller's
+        // array is left alone.  Usually there are none, so nothing is
+        // copied or converted until getMessage() is called.
+        this.parameters = parameters;
+        for (int i = 0; parameters != null && i < parameters.length; i++) {
+            if (!isImmutable(parameters[i])) {
+                if (this.parameters == parameters)
+                    this.parameters = parameters.clone();
+                this.parameters[i] = parameters[i].toString();
+            }
+        }
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null
+            || value instanceof String
+            || value instanceof Number
+            || value instanceof Character
+            || value instanceof Boolean;
+    }
+
+    /**
+     * Returns the identifier of the diagnostic message, such as
+     * "P-014" or "V-005".
+     */
+    public String getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Returns the parameters of the diagnostic message, or null.
+     */
+    public Object[] getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Returns the diagnostic message, formatting it if needed.
+     */
+    public String getMessage() {
+        if (message == null) {
+            if (catalog == null)
+                return messageId;
+            message = catalog.getMessage(locale, messageId, parameters);
+        }
+        return message;
+    }
+
+    // the catalog isn't serialized, so the message must be formatted
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getMessage();
+        out.defaultWriteObject();
+    }
+}
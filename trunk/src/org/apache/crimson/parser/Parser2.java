@@ -59,6 +59,7 @@
 
 package org.apache.crimson.parser;
 
+import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Enumeration;
@@ -71,6 +72,7 @@ import org.xml.sax.helpers.*;
 import org.xml.sax.ext.*;
 
 import org.apache.crimson.util.MessageCatalog;
+import org.apache.crimson.util.SymbolTable;
 import org.apache.crimson.util.XmlChars;
 import org.apache.crimson.util.XmlNames;
 
@@ -131,18 +133,20 @@ public class Parser2
     private StringBuffer        strTmp;
     private char                nameTmp [];
     private NameCache           nameCache;
+    private SymbolTable         symbols;        // else String.intern ()
     private char                charTmp [] = new char [2];
     private String[]            namePartsTmp = new String[3];
 
     // temporaries local to namespace attribute processing in elements
     private boolean             seenNSDecl;
-    private NamespaceSupport    nsSupport;
-    /**
-     * nsAttTmp holds a list of namespace attributes used to check for
-     * #REQUIRED when validating and (namespaces == true && prefixes ==
-     * false)
-     */
-    private Vector              nsAttTmp;
+    private NamespaceStack      nsSupport;
+
+    // bitset of the defaulting plan's attributes seen in a start tag
+    private long                attSeen [] = new long [1];
+
+    // in validate-only mode, names of a start tag's attributes
+    private String              attNames [] = new String [8];
+    private int                 attCount;
 
     // NOTE:  odd heap behavior, at least with classic VM: if "strTmp" is
     // reused, LOTS of extra memory is consumed in some simple situations.
@@ -151,9 +155,13 @@ public class Parser2
     // parsing modes
     private boolean             isValidating = false;
     private boolean             fastStandalone = false;
+    private boolean             validateOnly = false;
+    private boolean             coalesceText = false;
     private boolean             isInAttribute = false;
     private boolean             namespaces;             // new in SAX2
     private boolean             prefixes;               // new in SAX2
+    private boolean             externalGeneral = true;
+    private boolean             externalParameter = true;
 
     // temporary DTD parsing state
     private boolean             inExternalPE;
@@ -166,6 +174,10 @@ public class Parser2
 
     // DTD state, used during parsing
     private boolean             ignoreDeclarations;
+    private boolean             skippedDeclarations;
+    private boolean             retainDeclarations;
+    private Grammar             grammar;        // tables in use, if shared
+    private Grammar             sharedDTD;
     private SimpleHashtable     elements = new SimpleHashtable (47);
     private SimpleHashtable     params = new SimpleHashtable (7);
 
@@ -173,7 +185,8 @@ public class Parser2
     Hashtable                   notations = new Hashtable (7);
     SimpleHashtable             entities = new SimpleHashtable (17);
 
-    // stuff associated with SAX
+    // stuff associated with SAX; the handlers are those in use, never
+    // null, chosen by setHandlers() from the ones the application set
     private ContentHandler      contentHandler;
     private DTDHandler          dtdHandler;
     private EntityResolver      resolver;
@@ -185,6 +198,14 @@ public class Parser2
     private DeclHandler         declHandler;
     private LexicalHandler      lexicalHandler;
 
+    // handlers as the application set them; validate-only parses
+    // don't use them, but later parses may
+    private ContentHandler      appContentHandler;
+    private DTDHandler          appDTDHandler;
+    private ErrorHandler        appErrHandler;
+    private DeclHandler         appDeclHandler;
+    private LexicalHandler      appLexicalHandler;
+
 
     // Compile time option:  disable validation support for a better
     // fit in memory-critical environments (P-Java etc).  Doing that
@@ -224,28 +245,43 @@ public class Parser2
         this.prefixes = prefixes;
     }
 
+    /**
+     * Set up the features saying whether external general and parameter
+     * entities (including the external DTD subset) are read.  They are
+     * always read when validating.
+     */
+    void setExternalEntityFeatures(boolean general, boolean parameter) {
+        externalGeneral = general;
+        externalParameter = parameter;
+    }
+
     void setEntityResolver(EntityResolver resolver) {
         this.resolver = resolver;
     }
 
     public void setDTDHandler(DTDHandler handler) {
-        dtdHandler = handler;
+        appDTDHandler = handler;
+        setHandlers();
     }
 
     void setContentHandler(ContentHandler handler) {
-        contentHandler = handler;
+        appContentHandler = handler;
+        setHandlers();
     }
 
     void setErrorHandler (ErrorHandler handler) {
-        errHandler = handler;
+        appErrHandler = handler;
+        setHandlers ();
     }
 
     void setLexicalHandler (LexicalHandler handler) {
-        lexicalHandler = handler;
+        appLexicalHandler = handler;
+        setHandlers ();
     }
 
     void setDeclHandler (DeclHandler handler) {
-        declHandler = handler;
+        appDeclHandler = handler;
+        setHandlers ();
     }
 
 
@@ -328,6 +364,44 @@ public class Parser2
     public boolean isFastStandalone ()
         { return fastStandalone; }
 
+    /**
+     * Setting this flag makes the parser only check documents, for
+     * applications which need to know whether a document is well formed
+     * (and, for validating parsers, valid) but don't use its content.
+     * All the usual errors are reported to the error handler, but no
+     * other events are reported:  content, lexical, DTD, and declaration
+     * handlers are not used.  Attribute values which aren't needed for
+     * those checks aren't turned into strings, and elements aren't given
+     * attribute lists.
+     */
+    public void setValidateOnly (boolean value)
+        { validateOnly = value; }
+
+    /**
+     * Returns true if documents are only checked, without reporting
+     * their content.
+     */
+    public boolean isValidateOnly ()
+        { return validateOnly; }
+
+    /**
+     * Setting this flag makes each run of character data (up to the
+     * next markup or entity reference) be reported with a single
+     * <em>characters</em> call, rather than in pieces as input buffers
+     * are refilled.  The input buffer grows to hold long runs of text,
+     * so this suits applications which would collect the text anyway,
+     * such as DOM builders.
+     */
+    public void setCoalescing (boolean value)
+        { coalesceText = value; }
+
+    /**
+     * Returns true if each run of character data is reported with
+     * a single call.
+     */
+    public boolean isCoalescing ()
+        { return coalesceText; }
+
 
     /**
      * In support of the HTML DOM model of client side
@@ -374,13 +448,11 @@ public class Parser2
         attTmp = new AttributesExImpl ();
         strTmp = new StringBuffer ();
         nameTmp = new char [20];
-        nameCache = new NameCache ();
+        symbols = SymbolTable.getShared ();
+        nameCache = new NameCache (symbols);
 
         if (namespaces) {
-            nsSupport = new NamespaceSupport();
-            if (supportValidation && isValidating && !prefixes) {
-                nsAttTmp = new Vector();
-            }
+            nsSupport = new NamespaceStack(symbols);
         }
 
         // reset doc info
@@ -392,11 +464,17 @@ public class Parser2
         doLexicalPE = false;
         donePrologue = false;
 
+        if (grammar != null) {
+            // don't clear declarations other parsers are using
+            newDeclarations ();
+            grammar = null;
+        }
         entities.clear ();
         notations.clear ();
         params.clear ();
         elements.clear ();
         ignoreDeclarations = false;
+        skippedDeclarations = false;
 
         // initialize predefined references ... re-interpreted later
         builtin ("amp", "&#38;");
@@ -415,21 +493,29 @@ public class Parser2
 
     static private final NullHandler nullHandler = new NullHandler();
 
+    // Chooses the handlers to use:  the application's, unless they're
+    // null or this parse only validates.  The application's are kept.
     private void setHandlers ()
     {
-        if (contentHandler == null) {
+        contentHandler = appContentHandler;
+        errHandler = appErrHandler;
+        dtdHandler = appDTDHandler;
+        lexicalHandler = appLexicalHandler;
+        declHandler = appDeclHandler;
+
+        if (contentHandler == null || validateOnly) {
             contentHandler = nullHandler;
         }
         if (errHandler == null) {
             errHandler = nullHandler;
         }
-        if (dtdHandler == null) {
+        if (dtdHandler == null || validateOnly) {
             dtdHandler = nullHandler;
         }
-        if (lexicalHandler == null) {
+        if (lexicalHandler == null || validateOnly) {
             lexicalHandler = nullHandler;
         }
-        if (declHandler == null) {
+        if (declHandler == null || validateOnly) {
             declHandler = nullHandler;
         }
     }
@@ -437,6 +523,7 @@ public class Parser2
     private void builtin (String entityName, String entityValue)
     {
         InternalEntity entity;
+        entityName = intern (entityName);
         entity = new InternalEntity (entityName, entityValue.toCharArray ());
         entities.put (entityName, entity);
     }
@@ -508,26 +595,10 @@ public class Parser2
             contentHandler.endDocument ();
 
         } catch (EndOfInputException e) {
-            if (!in.isDocument ()) {
-                String name = in.getName ();
-                do {    // force a relevant URI and line number  
-                    in = in.pop ();
-                } while (in.isInternal ());
-                fatal ("P-002", new Object []
-                        { name },
-                        e);
-            } else
-                fatal ("P-003", null, e);
+            endOfInput (e);
 
         } catch (RuntimeException e) {
-            // Don't discard location that triggered the exception
-            throw new SAXParseException (
-                e.getMessage () != null
-                    ? e.getMessage ()
-                    : e.getClass ().getName (),
-                locator.getPublicId (), locator.getSystemId (),
-                locator.getLineNumber (), locator.getColumnNumber (),
-                e);
+            throw runtimeFailure (e);
 
         } finally {
             // recycle temporary data used during parsing
@@ -535,7 +606,6 @@ public class Parser2
             attTmp = null;
             nameTmp = null;
             nameCache = null;
-            nsAttTmp = null;
 
             // ditto input sources etc
             if (in != null) {
@@ -546,15 +616,299 @@ public class Parser2
             // get rid of all DTD info ... some of it would be
             // useful for editors etc, investigate later.
 
-            params.clear ();
-            entities.clear ();
-            notations.clear ();
-            elements.clear ();
+            if (!retainDeclarations && grammar == null) {
+                params.clear ();
+                entities.clear ();
+                notations.clear ();
+                elements.clear ();
+            }
 
             afterDocument ();
         }
     }
 
+    private void endOfInput (EndOfInputException e)
+    throws SAXException, IOException
+    {
+        if (!in.isDocument ()) {
+            String name = in.getName ();
+            do {    // force a relevant URI and line number  
+                in = in.pop ();
+            } while (in.isInternal ());
+            fatal ("P-002", new Object []
+                    { name },
+                    e);
+        } else
+            fatal ("P-003", null, e);
+    }
+
+    private SAXParseException runtimeFailure (RuntimeException e)
+    {
+        // Don't discard location that triggered the exception
+        return new SAXParseException (
+            e.getMessage () != null
+                ? e.getMessage ()
+                : e.getClass ().getName (),
+            locator.getPublicId (), locator.getSystemId (),
+            locator.getLineNumber (), locator.getColumnNumber (),
+            e);
+    }
+
+    // package private -- keeps the DTD declarations after the parse,
+    // so that they can be used through getGrammar ()
+    void setRetainDeclarations (boolean value)
+    {
+        retainDeclarations = value;
+    }
+
+    // package private -- returns the declarations retained by the last
+    // parse as a grammar.  The parser starts afresh with its next parse,
+    // leaving the grammar's tables untouched.
+    Grammar getGrammar (String publicId, String systemId)
+    {
+        Grammar         retval;
+
+        params.clear ();
+        retval = new Grammar (elements, notations, entities,
+                isStandalone, isValidating, symbols, publicId, systemId);
+        newDeclarations ();
+        return retval;
+    }
+
+    private void newDeclarations ()
+    {
+        elements = new SimpleHashtable (47);
+        params = new SimpleHashtable (7);
+        notations = new Hashtable (7);
+        entities = new SimpleHashtable (17);
+    }
+
+    // package private -- uses the declarations of a grammar, as when
+    // parsing records after the document's prologue.  Grammars are only
+    // read, so many parsers may use one at once.
+    void useGrammar (Grammar g)
+    {
+        if (isValidating && !g.isValidating)
+            throw new IllegalArgumentException ();
+        if (g.symbols != SymbolTable.getShared ())
+            throw new IllegalArgumentException ();
+        elements = g.elements;
+        params = new SimpleHashtable (7);
+        notations = g.notations;
+        entities = g.entities;
+        isStandalone = g.isStandalone;
+        grammar = g;
+    }
+
+    // package private
+    boolean isSharingDeclarations ()
+    {
+        return grammar != null;
+    }
+
+    // package private -- documents whose external DTD subset is the
+    // one the grammar was read from use its declarations instead of
+    // reading their own.  Documents with an internal subset always
+    // read their own declarations.
+    void setSharedDTD (Grammar dtd)
+    {
+        if (dtd != null && isValidating && !dtd.isValidating)
+            throw new IllegalArgumentException ();
+        if (dtd != null && dtd.symbols != SymbolTable.getShared ())
+            throw new IllegalArgumentException ();
+        sharedDTD = dtd;
+    }
+
+    /**
+     * Reads a DTD (an external subset) without any document, returning
+     * its declarations as a grammar other parsers can share.
+     */
+    // package private
+    Grammar parseDTD (InputSource input)
+    throws SAXException, IOException
+    {
+        if (input == null)
+            fatal ("P-000");
+
+        init ();
+
+        try {
+            // the subset is read as if referenced from an empty document
+            ExternalEntity      subset;
+
+            in = InputEntity.getInputEntity (errHandler, locale);
+            in.init (new char [0], null, null, false);
+
+            subset = new ExternalEntity (in);
+            subset.name = "[dtd]";
+            subset.isPE = true;
+            subset.publicId = input.getPublicId ();
+            subset.systemId = input.getSystemId ();
+            externalParameterEntity (subset, input);
+
+            checkNotations ();
+            return getGrammar (subset.publicId, subset.systemId);
+
+        } catch (EndOfInputException e) {
+            endOfInput (e);
+            return null;
+
+        } catch (RuntimeException e) {
+            throw runtimeFailure (e);
+
+        } finally {
+            strTmp = null;
+            attTmp = null;
+            nameTmp = null;
+            nameCache = null;
+
+            if (in != null) {
+                in.close ();
+                in = null;
+            }
+        }
+    }
+
+    // switches to the shared DTD, reporting the declarations a DOM
+    // needs:  notations and general entities
+    private void useSharedDTD ()
+    throws SAXException
+    {
+        boolean         standalone = isStandalone;
+
+        useGrammar (sharedDTD);
+        isStandalone = standalone;
+
+        for (Enumeration e = notations.keys (); e.hasMoreElements (); ) {
+            String      name = (String) e.nextElement ();
+            Object      value = notations.get (name);
+
+            if (value instanceof ExternalEntity) {
+                ExternalEntity notation = (ExternalEntity) value;
+                dtdHandler.notationDecl (name, notation.publicId,
+                        notation.systemId);
+            }
+        }
+        for (Enumeration e = entities.sharedKeys (); e.hasMoreElements (); ) {
+            String      name = (String) e.nextElement ();
+            Object      value = entities.get (name);
+
+            if (value instanceof InternalEntity) {
+                if (!isBuiltin (name))
+                    declHandler.internalEntityDecl (name,
+                            new String (((InternalEntity) value).buf));
+            } else {
+                ExternalEntity entity = (ExternalEntity) value;
+                if (entity.notation != null)
+                    dtdHandler.unparsedEntityDecl (name, entity.publicId,
+                            entity.systemId, entity.notation);
+                else
+                    declHandler.externalEntityDecl (name, entity.publicId,
+                            entity.systemId);
+            }
+        }
+    }
+
+    private static boolean isBuiltin (String name)
+    {
+        return "amp".equals (name) || "lt".equals (name)
+            || "gt".equals (name) || "quot".equals (name)
+            || "apos".equals (name);
+    }
+
+    /**
+     * Parses a single element, split out of a larger document, as if it
+     * were a complete document.  Declarations come from useGrammar,
+     * and the element is parsed in the namespace scope given by its
+     * ancestors' bindings (prefix and URI pairs).  Those bindings are
+     * reported as prefix mappings around the element, so the handler
+     * sees the same scope it would in the whole document.
+     */
+    // package private
+    void parseRecord (
+        char            text [],
+        int             offset,
+        int             length,
+        InputSource     source,
+        int             lineNumber,
+        String          bindings []
+    ) throws SAXException, IOException
+    {
+        InputSource     input;
+
+        input = new InputSource (new CharArrayReader (text, offset, length));
+        input.setPublicId (source.getPublicId ());
+        input.setSystemId (source.getSystemId ());
+
+        // temporary data is kept from one record to the next
+        if (attTmp == null) {
+            attTmp = new AttributesExImpl ();
+            strTmp = new StringBuffer ();
+            nameTmp = new char [20];
+            symbols = SymbolTable.getShared ();
+            nameCache = new NameCache (symbols);
+            if (locale == null)
+                locale = Locale.getDefault ();
+            if (resolver == null)
+                resolver = new Resolver ();
+        }
+        setHandlers ();
+
+        if (namespaces) {
+            if (nsSupport == null)
+                nsSupport = new NamespaceStack (symbols);
+            else
+                nsSupport.reset ();
+            nsSupport.pushContext ();
+            for (int i = 0; bindings != null && i < bindings.length; i += 2)
+                nsSupport.declarePrefix (bindings [i], bindings [i + 1]);
+        }
+        isInAttribute = false;
+        inExternalPE = false;
+        doLexicalPE = false;
+        donePrologue = true;
+
+        try {
+            in = InputEntity.getInputEntity (errHandler, locale);
+            // short records don't need a full size buffer; init()
+            // never makes one larger than usual
+            in.init (input, null, null, false, length + 2);
+            in.setLineNumber (lineNumber);
+
+            contentHandler.setDocumentLocator (locator);
+            contentHandler.startDocument ();
+            if (namespaces) {
+                for (int i = 0; bindings != null && i < bindings.length;
+                        i += 2)
+                    contentHandler.startPrefixMapping (bindings [i],
+                            bindings [i + 1]);
+            }
+            if (!in.peekc ('<') || !maybeElement (null))
+                fatal ("P-067");
+            if (!in.isEOF ())
+                fatal ("P-001", new Object []
+                        { Integer.toHexString (((int)getc ())) } );
+            if (namespaces) {
+                for (int i = 0; bindings != null && i < bindings.length;
+                        i += 2)
+                    contentHandler.endPrefixMapping (bindings [i]);
+            }
+            contentHandler.endDocument ();
+
+        } catch (EndOfInputException e) {
+            endOfInput (e);
+
+        } catch (RuntimeException e) {
+            throw runtimeFailure (e);
+
+        } finally {
+            if (in != null) {
+                in.close ();
+                in = null;
+            }
+        }
+    }
+
     // package private -- for subclass 
     void afterRoot () throws SAXException { }
 
@@ -811,10 +1165,20 @@ public class Parser2
         } else if (entity instanceof ExternalEntity) {
             if (!isEntityValue) // must be a PE ...
                 fatal ("P-013", new Object [] { name });
+            if (isSkipping (true)) {
+                skipParameterEntity (name);
+                return;
+            }
             // XXX if this returns false ...
             pushReader ((ExternalEntity) entity);
 
         } else if (entity == null) {
+            // maybe it was declared in an entity we didn't read
+            if (table == entities && isSkipped ()) {
+                contentHandler.skippedEntity (name);
+                return;
+            }
+
             //
             // Note:  much confusion about whether spec requires such
             // errors to be fatal in many cases, but none about whether
@@ -887,61 +1251,32 @@ public class Parser2
         boolean         savedLexicalPE = doLexicalPE;
 
         doLexicalPE = false;
+        // the text is reported from the input buffer when it can be,
+        // and only checked if nobody wants it
         boolean saveCommentText = lexicalHandler != nullHandler;
         if (saveCommentText) {
             strTmp = new StringBuffer ();
         }
 
-    oneComment:
-        for (;;) {
-            try {
-                // bypass PE expansion, but permit PEs
-                // to complete ... valid docs won't care.
-                for (;;) {
-                    int c = getc ();
-                    if (c == '-') {
-                        c = getc ();
-                        if (c != '-') {
-                            if (saveCommentText)
-                                strTmp.append ('-');
-                            ungetc ();
-                            continue;
-                        }
-                        nextChar ('>', "F-022", null);
-                        break oneComment;
-                    }
-                    if (saveCommentText)
-                        strTmp.append ((char)c);
-                }
-            } catch (EndOfInputException e) {
-                //
-                // This is fatal EXCEPT when we're processing a PE...
-                // in which case a validating processor reports an error.
-                // External PEs are easy to detect; internal ones we
-                // infer by being an internal entity outside an element.
-                //
-                if (inExternalPE || (!donePrologue && in.isInternal ())) {
-                    if (supportValidation && isValidating)
-                        error ("V-021", null);
-                    in = in.pop ();
-                    continue;
-                }
-                fatal ("P-017");
+        // bypass PE expansion, but permit PEs
+        // to complete ... valid docs won't care.
+        while (!in.scanComment (saveCommentText ? lexicalHandler : null,
+                strTmp)) {
+            //
+            // This is fatal EXCEPT when we're processing a PE...
+            // in which case a validating processor reports an error.
+            // External PEs are easy to detect; internal ones we
+            // infer by being an internal entity outside an element.
+            //
+            if (inExternalPE || (!donePrologue && in.isInternal ())) {
+                if (supportValidation && isValidating)
+                    error ("V-021", null);
+                in = in.pop ();
+                continue;
             }
+            fatal ("P-017");
         }
         doLexicalPE = savedLexicalPE;
-        if (saveCommentText) {
-            // Convert string to array of chars
-            int length = strTmp.length();
-            char[] charArray = new char[length];
-            if (length != 0) {
-                // XXX Avoid calling getChars on zero-size array as a
-                // workaround for a bug that occurs in at least JDK1.2.2
-                // which has since been fixed in JDK1.3
-                strTmp.getChars(0, length, charArray, 0);
-            }
-            lexicalHandler.comment(charArray, 0, length);
-        }
         return true;
     }
 
@@ -968,20 +1303,12 @@ public class Parser2
             fatal ("P-020", new Object [] { target });
 
         if (maybeWhitespace ()) {
-            strTmp = new StringBuffer ();
-            try {
-                for (;;) {
-                    // use in.getc to bypass PE processing
-                    char c = in.getc ();
-                    //Reached the end of PI.
-                    if (c == '?' && in.peekc ('>'))
-                        break;
-                    strTmp.append (c);
-                }
-            } catch (EndOfInputException e) {
+            // data isn't needed when only checking the document
+            String data = in.scanPI (!validateOnly);
+
+            if (data == null)
                 fatal ("P-021");
-            }
-            contentHandler.processingInstruction (target, strTmp.toString ());
+            contentHandler.processingInstruction (target, data);
         } else {
             if (!in.peek ("?>", null))
                 fatal ("P-022");
@@ -1134,7 +1461,9 @@ public class Parser2
         } else {
             lexicalHandler.startDTD(rootElementName, null, null);
         }
-        if (in.peekc ('[')) {
+        boolean         internalSubset = in.peekc ('[');
+
+        if (internalSubset) {
             for (;;) {
                 //Pop PEs when they are done.
                 if (in.isEOF () && !in.isDocument ()) {
@@ -1156,22 +1485,41 @@ public class Parser2
         }
         nextChar ('>', "F-025", null);
 
+        if (externalSubset != null && !internalSubset
+                && sharedDTD != null && sharedDTD.isDTD (externalSubset)) {
+            useSharedDTD ();
+            lexicalHandler.endDTD();
+            return true;
+        }
+
         // [30] extSubset ::= TextDecl? extSubsetDecl
         // [31] extSubsetDecl ::= ( markupdecl | conditionalSect
         //              | PEReference | S )*
         //      ... same as [79] extPE, which is where the code is
 
         if (externalSubset != null) {
-            externalSubset.name = "[dtd]";  // SAX2 ext specifies this name
-            externalSubset.isPE = true;
-            externalParameterEntity (externalSubset);
+            if (isSkipping (true)) {
+                // SAX2 names the external subset "[dtd]" here too
+                contentHandler.skippedEntity ("[dtd]");
+                skippedDeclarations = true;
+            } else {
+                externalSubset.name = "[dtd]";  // SAX2 ext specifies this name
+                externalSubset.isPE = true;
+                externalParameterEntity (externalSubset);
+            }
         }
 
         // params are no good to anyone starting now -- bye!
         params.clear ();
 
         lexicalHandler.endDTD();
+        checkNotations ();
+        return true;
+    }
 
+    private void checkNotations ()
+    throws SAXException
+    {
         // make sure notations mentioned in attributes
         // and entities were declared ... those are validity
         // errors, but we must always clean up after them!
@@ -1198,8 +1546,6 @@ public class Parser2
             v.removeElement (name);
             notations.remove (name);
         }
-
-        return true;
     }
 
     private boolean maybeMarkupDecl ()
@@ -1323,7 +1669,8 @@ public class Parser2
                 // minimize repetitive diagnostics
                 element = new ElementDecl (name.name);
                 element.contentType = strANY;
-                elements.put (name.name, element);
+                if (grammar == null)
+                    elements.put (name.name, element);
             }
             if (validator == null
                     && rootElementName != null
@@ -1336,8 +1683,22 @@ public class Parser2
         // reported thousands of lines "late".
         startLine = in.getLineNumber ();
 
-        // Invariant: attTmp and nsAttTmp are empty except briefly in this
-        // method they are not empty iff haveAttributes is true
+        // Invariant: attTmp is empty except briefly in this method
+        // it is not empty iff haveAttributes is true
+        attCount = 0;
+
+        // Attributes the start tag omits may need defaults or be
+        // #REQUIRED; note which of those it provides
+        AttributeDecl   plan [] = null;
+
+        if (element != null) {
+            plan = element.getDefaultingPlan ();
+            if (plan.length > (attSeen.length << 6))
+                attSeen = new long [(plan.length + 63) >> 6];
+            else
+                for (int i = (plan.length + 63) >> 6; --i >= 0; )
+                    attSeen [i] = 0;
+        }
 
         // Track whether we saw whitespace before an attribute;
         // in some cases it's required, though superfluous
@@ -1383,7 +1744,8 @@ public class Parser2
             if (attQName == null)
                 fatal ("P-031", new Object [] { new Character (getc ()) });
 
-            if (attTmp.getValue (attQName) != null)
+            if (validateOnly ? isDuplicate (attQName)
+                    : attTmp.getValue (attQName) != null)
                 fatal ("P-032", new Object [] { attQName });
 
             // [25] Eq ::= S? '=' S?
@@ -1401,7 +1763,8 @@ public class Parser2
 
             sawWhite = in.maybeWhitespace ();
 
-            // normalize and check values right away.
+            // normalize and check values right away.  When only
+            // checking, CDATA values are seldom needed.
 
             info = (element == null)
                     ? null
@@ -1409,13 +1772,17 @@ public class Parser2
             if (info == null) {
                 if (supportValidation && isValidating)
                     error ("V-007", new Object [] { attQName, name.name });
-                value = strTmp.toString ();
+                value = validateOnly ? null : strTmp.toString ();
             } else {
+                if (info.index >= 0)
+                    attSeen [info.index >> 6] |= 1L << info.index;
                 if (!AttributeDecl.CDATA.equals (info.type)) {
                     value = normalize (!info.isFromInternalSubset);
                     if (supportValidation && isValidating)
                         validateAttributeSyntax (info, value);
-                } else
+                } else if (validateOnly && !info.isFixed)
+                    value = null;
+                else
                     value = strTmp.toString ();
                 if (supportValidation && isValidating
                         && info.isFixed
@@ -1424,17 +1791,29 @@ public class Parser2
                         new Object [] {attQName, name.name, info.defaultValue});
             }
 
-            // assert(value != null)
+            // assert(value != null || validateOnly)
 
-            if (XmlLang.equals (attQName) && !isXmlLang (value))
-                error ("P-033", new Object [] { value });
+            if (XmlLang.equals (attQName)) {
+                if (value == null)
+                    value = strTmp.toString ();
+                if (!isXmlLang (value))
+                    error ("P-033", new Object [] { value });
+            }
 
             String type = (info == null) ? AttributeDecl.CDATA : info.type;
             String defaultValue = (info == null) ? null : info.defaultValue;
 
-            if (namespaces) {
+            if (validateOnly) {
+                if (namespaces && isNamespaceDecl (attQName)) {
+                    if (value == null)
+                        value = strTmp.toString ();
+                    processAttributeNS(attQName, type, value,
+                                       defaultValue, true, null);
+                } else
+                    addName (attQName);
+            } else if (namespaces) {
                 exceptions = processAttributeNS(attQName, type, value,
-                                                defaultValue, true, false,
+                                                defaultValue, true,
                                                 exceptions);
             } else {
                 // No namespaces case
@@ -1444,15 +1823,81 @@ public class Parser2
 
             haveAttributes = true;
         }
-        if (element != null)
+        int             specifiedCount = attCount;
+
+        if (element != null && !validateOnly)
             attTmp.setIdAttributeName (element.id);
 
         // if we had ATTLIST decls, handle required & defaulted attributes
         // before telling next layer about this element
-        if (element != null && element.attributes.size () != 0) {
-            haveAttributes = defaultAttributes(element) || haveAttributes;
+        if (plan != null && plan.length != 0) {
+            haveAttributes = defaultAttributes(plan) || haveAttributes;
         }
 
+        if (validateOnly) {
+            if (namespaces)
+                checkNames (name.name, specifiedCount);
+            haveAttributes = false;
+        } else
+            startElement (name.name, exceptions);
+
+        // Clear temporaries only when necessary because this may be
+        // expensive and a doc may have lots of elements w/o attributes
+        if (haveAttributes)
+            attTmp.clear();
+
+        // prepare to validate the content of this element.
+        // in nonvalidating parsers, this accepts ANY content
+        validator = newValidator (element);
+        
+        if (hasContent) {
+            content (element, false, validator);
+
+            // [42] ETag ::= '</' Name S? '>'
+            // ... content swallowed "</"
+
+            if (!in.peek (name.name, name.chars))
+                fatal ("P-034", new Object []
+                    { name.name, new Integer (startLine) });
+            in.maybeWhitespace ();
+        }
+
+        nextChar ('>', "F-027", name.name);
+        validator.done ();
+
+        if (validateOnly) {
+            if (namespaces)
+                nsSupport.popContext();
+        } else if (namespaces) {
+            // Split the name.  Unfortunately, we can't always reuse the
+            // info from the startElement event above b/c this element may
+            // have subelements and a global temporary is used.
+            String[] parts = processName(name.name, false, false);
+
+            // Report appropriate events...
+            contentHandler.endElement(parts[0], parts[1], parts[2]);
+            int count = nsSupport.getDeclaredCount();
+            for (int i = 0; i < count; i++) {
+                contentHandler.endPrefixMapping(
+                    nsSupport.getDeclaredPrefix(i));
+            }
+            nsSupport.popContext();
+        } else {
+            contentHandler.endElement("", "", name.name);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reports the start of an element, after its attributes (including
+     * defaults) are in <code>attTmp</code>.  Exceptions from the first
+     * pass over the attributes are reported unless a namespace
+     * declaration means they need another pass.
+     */
+    private void startElement (String qName, Vector exceptions)
+        throws SAXException
+    {
         // Ensure that this element's namespace declarations apply to all of
         // this element's attributes as well.  If there was a Namespace
         // declaration, we have to make a second pass just to be safe -- this
@@ -1484,81 +1929,75 @@ public class Parser2
 
         // OK, finally report the event.
         if (namespaces) {
-            String[] parts = processName(name.name, false, false);
+            String[] parts = processName(qName, false, false);
             contentHandler.startElement(parts[0], parts[1], parts[2], attTmp);
         } else {
-            contentHandler.startElement("", "", name.name, attTmp);
-        }
-
-        // Clear temporaries only when necessary because this may be
-        // expensive and a doc may have lots of elements w/o attributes
-        if (haveAttributes) {
-            attTmp.clear();
-            if (supportValidation && isValidating && namespaces && !prefixes) {
-                nsAttTmp.removeAllElements();
-            }
+            contentHandler.startElement("", "", qName, attTmp);
         }
+    }
 
-        // prepare to validate the content of this element.
-        // in nonvalidating parsers, this accepts ANY content
-        validator = newValidator (element);
-        
-        if (hasContent) {
-            content (element, false, validator);
-
-            // [42] ETag ::= '</' Name S? '>'
-            // ... content swallowed "</"
+    /**
+     * In validate-only mode, reports errors for element and attribute
+     * names (as saved by <em>addName</em>) using undeclared prefixes.
+     * Names of defaulted attributes are checked only if the start tag
+     * declared a namespace, as when reporting the element.
+     */
+    private void checkNames (String qName, int specifiedCount)
+        throws SAXException
+    {
+        int             length = seenNSDecl ? attCount : specifiedCount;
 
-            if (!in.peek (name.name, name.chars))
-                fatal ("P-034", new Object []
-                    { name.name, new Integer (startLine) });
-            in.maybeWhitespace ();
+        for (int i = 0; i < length; i++) {
+            if (nsSupport.processName(attNames[i], namePartsTmp, true)
+                    == null)
+                processName(attNames[i], true, false);
         }
+        if (nsSupport.processName(qName, namePartsTmp, false) == null)
+            processName(qName, false, false);
+    }
 
-        nextChar ('>', "F-027", name.name);
-        validator.done ();
+    // validate-only mode saves attribute names instead of attributes
+    private void addName (String qName)
+    {
+        if (attCount == attNames.length) {
+            String      temp [] = new String [2 * attCount];
 
-        if (namespaces) {
-            // Split the name.  Unfortunately, we can't always reuse the
-            // info from the startElement event above b/c this element may
-            // have subelements and a global temporary is used.
-            String[] parts = processName(name.name, false, false);
+            System.arraycopy (attNames, 0, temp, 0, attCount);
+            attNames = temp;
+        }
+        attNames [attCount++] = qName;
+    }
 
-            // Report appropriate events...
-            contentHandler.endElement(parts[0], parts[1], parts[2]);
-            Enumeration prefixes = nsSupport.getDeclaredPrefixes();
-            while (prefixes.hasMoreElements()) {
-                String prefix = (String)prefixes.nextElement();
-                contentHandler.endPrefixMapping(prefix);
-            }
-            nsSupport.popContext();
-        } else {
-            contentHandler.endElement("", "", name.name);
+    private boolean isDuplicate (String qName)
+    {
+        // names are canonical
+        for (int i = 0; i < attCount; i++) {
+            if (attNames [i] == qName)
+                return true;
         }
+        return false;
+    }
 
-        return true;
+    private static boolean isNamespaceDecl (String qName)
+    {
+        return qName.startsWith ("xmlns")
+            && (qName.length () == 5 || qName.charAt (5) == ':');
     }
 
     /**
      * Process attributes for namespace support.  This is mostly common
-     * code that gets called from two places and was factored out.  The
-     * <code>isDefaulting</code> param specifies where the code is called
-     * from.
-     *
-     * @param isDefaulting true iff we are processing this attribute from
-     *                     the <code>defaultAttributes(...)</code> method
+     * code that gets called from two places and was factored out.
      *
      * The namespace processing code is derived from the SAX2 ParserAdapter
      * code.  This code should be kept in sync with ParserAdapter bug
      * fixes.
      *
      * Note: Modifies <code>seenNSDecl</code> iff a xmlns attribute, ie a
-     * namespace decl, was found.  Modifies <code>attTmp</code> and
-     * <code>nsAttTmp</code>.
+     * namespace decl, was found.  Modifies <code>attTmp</code>.
      */
     private Vector processAttributeNS(String attQName, String type,
                                       String value, String defaultValue,
-                                      boolean isSpecified, boolean isDefaulting,
+                                      boolean isSpecified,
                                       Vector exceptions)
         throws SAXException
     {
@@ -1581,7 +2020,7 @@ public class Parser2
                 prefix = "";
             } else {
                 // Non-default namespace decl, extract the prefix
-                prefix = attQName.substring(6);
+                prefix = nsSupport.getLocalName(attQName);
             }
 
             if (!nsSupport.declarePrefix(prefix, value)) {
@@ -1589,18 +2028,11 @@ public class Parser2
             }
             contentHandler.startPrefixMapping(prefix, value);
 
-            // We may need to add this attribute to appropriate lists
-            if (prefixes) {
-                attTmp.addAttribute("", prefix, attQName.intern(),
+            // Only reported to the ContentHandler with "prefixes"; the
+            // #REQUIRED check uses the start tag's "seen" bits instead
+            if (prefixes && !validateOnly) {
+                attTmp.addAttribute("", prefix, attQName,
                                     type, value, defaultValue, isSpecified);
-            } else if (supportValidation && isValidating && !isDefaulting) {
-                // Add this namespace attribute to a different list that
-                // will be used to check for #REQUIRED attributes later.
-                // Since "prefixes" is false, these are not reported to the
-                // ContentHandler.  This step is not needed during the
-                // second pass of attribute processing where default values
-                // are provided.
-                nsAttTmp.addElement(attQName);
             }
             seenNSDecl = true;
             return exceptions;
@@ -1647,15 +2079,14 @@ public class Parser2
             // SAX should use "" instead of null for parts 0 and 1 ???
             parts[0] = "";
             String localName = XmlNames.getLocalPart(qName);
-            parts[1] = localName != null ? localName.intern() : "";
-            parts[2] = qName.intern();
+            parts[1] = localName != null ? intern(localName) : "";
+            parts[2] = intern(qName);
 
             String messageId = "P-084";
             Object[] parameters = new Object[] { qName };
 	    if (useException) {
-                throw new SAXParseException(
-                    messages.getMessage(locale, messageId, parameters),
-                    locator);
+                throw new ParseDiagnostic(messages, locale,
+                    messageId, parameters, locator, null);
             }
             error(messageId, parameters);
         }
@@ -1696,49 +2127,32 @@ public class Parser2
 
     /**
      * Provide default attributes for an element and check for #REQUIRED
-     * attributes.
+     * attributes, given the element's defaulting plan.
      *
      * Note: this method accesses <code>attTmp</code> and
-     * <code>nsAttTmp</code>
+     * <code>attSeen</code>
      */
-    private boolean defaultAttributes(ElementDecl element)
+    private boolean defaultAttributes(AttributeDecl plan[])
         throws SAXException
     {
         boolean         didDefault = false;
 
-        // Go through all declared attributes and:
+        // Go through the declared attributes which matter and:
         // 1) Default anything the document didn't provide.
         // 2) Check #REQUIRED values.
-        for (Enumeration e = element.attributes.keys();
-                e.hasMoreElements(); ) {
-
-            // Declared attribute name
-            String declAttName = (String)e.nextElement();
-
-            if (attTmp.getValue(declAttName) != null) {
+        for (int i = 0; i < plan.length; i++) {
+            if ((attSeen[i >> 6] & (1L << i)) != 0) {
                 // Attribute already has value so no defaulting necessary
                 continue;
             }
 
-            // If we get here, then declared attribute is not in the list
-            // of attributes to be reported to ContentHandler.
-
-            // Get more info on the declared attribute
-            AttributeDecl info =
-                    (AttributeDecl)element.attributes.get(declAttName);
+            // If we get here, then the start tag didn't provide the
+            // declared attribute (even as a namespace declaration).
+            AttributeDecl info = plan[i];
+            String declAttName = info.name;
 
             // If this is a #REQUIRED attribute...
             if (supportValidation && isValidating && info.isRequired) {
-                // Under certain conditions, check the auxiliary nsAttTmp
-                // list for #REQUIRED attributes since these are not in the
-                // list to be reported to the ContentHandler.
-                if (namespaces && !prefixes) {
-                    if (nsAttTmp.contains(declAttName)) {
-                        // Namespace attribute is #REQUIRED and already has
-                        // a value
-                        continue;
-                    }
-                }
                 error("V-009", new Object [] { declAttName });
             }
 
@@ -1748,9 +2162,12 @@ public class Parser2
                         && isStandalone && !info.isFromInternalSubset)
                     error ("V-010", new Object [] { declAttName });
 
-                if (namespaces) {
+                if (validateOnly && !(namespaces
+                        && isNamespaceDecl(declAttName))) {
+                    addName(declAttName);
+                } else if (namespaces) {
                     processAttributeNS(declAttName, info.type, defaultValue,
-                                       defaultValue, false, true, null);
+                                       defaultValue, false, null);
                 } else {
                     attTmp.addAttribute("", "", declAttName, info.type,
                                         defaultValue, defaultValue, false);
@@ -1823,7 +2240,7 @@ public class Parser2
                     error ("V-011", new Object [] { element.name });
                 continue;
             }
-            if (in.parsedContent (contentHandler, validator))
+            if (in.parsedContent (contentHandler, validator, coalesceText))
                 continue;
 
             if (in.isEOF ())
@@ -2505,6 +2922,12 @@ public class Parser2
         InputEntity             last = in;
 
         if (entity == null) {
+            // maybe it was declared in an entity we didn't read
+            if (isSkipped ()) {
+                contentHandler.skippedEntity (name);
+                return;
+            }
+
             //
             // Note:  much confusion about whether spec requires such
             // errors to be fatal in many cases, but none about whether
@@ -2542,7 +2965,10 @@ public class Parser2
                     && !e.isFromInternalSubset)
                 error ("V-002", new Object [] { name });
 
-            externalParsedEntity (element, e, validator);
+            if (isSkipping (false))
+                contentHandler.skippedEntity (name);
+            else
+                externalParsedEntity (element, e, validator);
         } else
             throw new InternalError (name);
     }
@@ -2571,7 +2997,10 @@ public class Parser2
             pushReader (value.buf, name, false);
 
         } else if (entity instanceof ExternalEntity) {
-            externalParameterEntity ((ExternalEntity)entity);
+            if (isSkipping (true))
+                skipParameterEntity (name);
+            else
+                externalParameterEntity ((ExternalEntity)entity);
 
         } else if (entity == null) {
             //
@@ -2836,15 +3265,21 @@ public class Parser2
 
     private void externalParameterEntity (ExternalEntity next)
     throws IOException, SAXException
+    {
+        externalParameterEntity (next, null);
+    }
+
+    // the input source is resolved from the entity if it's null
+    private void externalParameterEntity (
+        ExternalEntity  next,
+        InputSource     source
+    ) throws IOException, SAXException
     {
         //
         // Reap the intended benefits of standalone declarations:
         // don't deal with external parameter entities, except to
-        // validate the standalone declaration.
-        //
-        // XXX perhaps:  also add an option to skip reading external
-        // PEs when not validating, so this behaves like the parsers
-        // in Gecko and IE5.  Means setting ignoreDeclarations ...
+        // validate the standalone declaration.  (Skipping them in
+        // other cases is controlled by a SAX2 feature; see callers.)
         //
         if (isStandalone && fastStandalone)
             return;
@@ -2865,7 +3300,7 @@ public class Parser2
         // SAXParseException
         try {
             // XXX if this returns false ...
-            pushReader (next);
+            pushReader (next, source);
         } catch (IOException e) {
             fatal ("P-082", new Object [] { next.systemId }, e);
         }
@@ -2907,6 +3342,32 @@ public class Parser2
         doLexicalPE = false;
     }
 
+    // true if external entities of this kind aren't to be read
+    private boolean isSkipping (boolean isPE)
+    {
+        if (supportValidation && isValidating)
+            return false;
+        return isPE ? !externalParameter : !externalGeneral;
+    }
+
+    // true if undeclared general entities may have been declared
+    // in some external entity we didn't read
+    private boolean isSkipped ()
+    {
+        return skippedDeclarations && !isStandalone;
+    }
+
+    // like the case of an undefined PE:  the PE might have included
+    // an overriding declaration, so later ones are ignored
+    private void skipParameterEntity (String name)
+    throws SAXException
+    {
+        contentHandler.skippedEntity ("%" + name);
+        skippedDeclarations = true;
+        if (!isStandalone)
+            ignoreDeclarations = true;
+    }
+
     private void readEncoding (boolean must)
     throws IOException, SAXException
     {
@@ -3124,13 +3585,21 @@ public class Parser2
 
     private boolean pushReader (ExternalEntity next)
     throws SAXException, IOException
+    {
+        return pushReader (next, null);
+    }
+
+    private boolean pushReader (ExternalEntity next, InputSource s)
+    throws SAXException, IOException
     {
         if (!next.isPE && !isInAttribute) {
             lexicalHandler.startEntity(next.name);
         }
 
         InputEntity     r = InputEntity.getInputEntity (errHandler, locale);
-        InputSource     s = next.getInputSource (resolver);
+
+        if (s == null)
+            s = next.getInputSource (resolver);
 
         r.init (s, next.name, in, next.isPE);
         in = r;
@@ -3145,9 +3614,8 @@ public class Parser2
     {
         SAXParseException       x;
 
-        x = new SAXParseException (
-            messages.getMessage (locale, messageId, parameters),
-            locator);
+        x = new ParseDiagnostic (messages, locale,
+            messageId, parameters, locator, null);
 
         // continuable, minor ... "this may matter to you..."
         errHandler.warning (x);
@@ -3157,9 +3625,8 @@ public class Parser2
     void error (String messageId, Object parameters [])
     throws SAXException
     {
-        SAXParseException       x = new SAXParseException (
-            messages.getMessage (locale, messageId, parameters),
-            locator);
+        SAXParseException       x = new ParseDiagnostic (messages, locale,
+            messageId, parameters, locator, null);
 
         // continuable, major ... e.g. invalid document
         errHandler.error (x);
@@ -3179,9 +3646,8 @@ public class Parser2
     private void fatal (String messageId, Object parameters [], Exception e)
     throws SAXException
     {
-        SAXParseException       x = new SAXParseException (
-            messages.getMessage (locale, messageId, parameters),
-            locator, e);
+        SAXParseException       x = new ParseDiagnostic (messages, locale,
+            messageId, parameters, locator, e);
         errHandler.fatalError (x);
 
         // not continuable ... e.g. basic well-formedness errors
@@ -3226,7 +3692,22 @@ public class Parser2
     // are repeated in multiple documents (e.g. stylesheets) we go
     // a bit further, and intern globally.
     //
+    // names are canonicalized by the shared symbol table, if any
+    private String intern (String name)
+    {
+        if (symbols != null)
+            return symbols.intern (name);
+        return name.intern ();
+    }
+
     static class NameCache {
+        private SymbolTable     symbols;
+
+        NameCache (SymbolTable symbols)
+        {
+            this.symbols = symbols;
+        }
+
         //
         // Unless we auto-grow this, the default size should be a
         // reasonable bit larger than needed for most XML files
@@ -3271,13 +3752,17 @@ public class Parser2
             entry = new NameCacheEntry ();
             entry.chars = new char [len];
             System.arraycopy (value, 0, entry.chars, 0, len);
-            entry.name = new String (entry.chars);
+            if (symbols != null)
+                entry.name = symbols.intern (entry.chars, 0, len);
+            else {
+                entry.name = new String (entry.chars);
                 //
                 // NOTE:  JDK 1.1 has a fixed size string intern table,
                 // with non-GC'd entries.  It can panic here; that's a
                 // JDK problem, use 1.2 or later with many identifiers.
                 //
-            entry.name = entry.name.intern ();          // "global" intern
+                entry.name = entry.name.intern ();      // "global" intern
+            }
             entry.next = hashtable [index];
             hashtable [index] = entry;
             return entry;
@@ -0,0 +1,180 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import java.util.Vector;
+
+
+/**
+ * This class maps string prefixes to values, so that the entries whose
+ * keys are prefixes of a given string can be found by one scan of that
+ * string.  It's used for the "starts with" entries of XML catalogs,
+ * where a linear search of all the entries would otherwise be needed.
+ *
+ * <P> Like <em>SimpleHashtable</em>, it's not synchronized, and
+ * entries can't be removed.
+ *
+ * @version $Revision$
+ */
+final class PrefixTrie
+{
+    private Node		root = new Node ();
+
+
+    /**
+     * Assigns the value for the given prefix, replacing any value
+     * it had before.
+     */
+    public void put (String prefix, Object value)
+    {
+	Node		node = root;
+
+	for (int i = 0; i < prefix.length (); i++)
+	    node = node.child (prefix.charAt (i), true);
+	node.value = value;
+    }
+
+    /**
+     * Returns the value assigned to the given prefix, or null.
+     */
+    public Object get (String prefix)
+    {
+	Node		node = root;
+
+	for (int i = 0; node != null && i < prefix.length (); i++)
+	    node = node.child (prefix.charAt (i), false);
+	return (node == null) ? null : node.value;
+    }
+
+    /**
+     * Returns the value of the longest prefix of the given string,
+     * or null if none of its prefixes have values.
+     */
+    public Object longestMatch (String key)
+    {
+	Node		node = root;
+	Object		retval = root.value;
+
+	for (int i = 0; i < key.length (); i++) {
+	    node = node.child (key.charAt (i), false);
+	    if (node == null)
+		break;
+	    if (node.value != null)
+		retval = node.value;
+	}
+	return retval;
+    }
+
+    /**
+     * Returns the values of all prefixes of the given string, longest
+     * prefix first, or null if none of them have values.
+     */
+    public Vector matches (String key)
+    {
+	Node		node = root;
+	Vector		retval = null;
+
+	for (int i = 0; node != null; i++) {
+	    if (node.value != null) {
+		if (retval == null)
+		    retval = new Vector (3);
+		retval.insertElementAt (node.value, 0);
+	    }
+	    if (i == key.length ())
+		break;
+	    node = node.child (key.charAt (i), false);
+	}
+	return retval;
+    }
+
+
+    // the children of a node are few, so they're searched linearly
+    private static final class Node
+    {
+	char		chars [];
+	Node		children [];
+	int		count;
+	Object		value;
+
+	Node child (char c, boolean create)
+	{
+	    for (int i = 0; i < count; i++) {
+		if (chars [i] == c)
+		    return children [i];
+	    }
+	    if (!create)
+		return null;
+
+	    if (chars == null) {
+		chars = new char [2];
+		children = new Node [2];
+	    } else if (count == chars.length) {
+		char	tmpChars [] = new char [2 * count];
+		Node	tmpChildren [] = new Node [2 * count];
+
+		System.arraycopy (chars, 0, tmpChars, 0, count);
+		System.arraycopy (children, 0, tmpChildren, 0, count);
+		chars = tmpChars;
+		children = tmpChildren;
+	    }
+	    chars [count] = c;
+	    return children [count++] = new Node ();
+	}
+    }
+}
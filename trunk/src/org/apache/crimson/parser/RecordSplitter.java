@@ -0,0 +1,357 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+
+/**
+ * Splits a record-oriented document into its prologue and the text of
+ * each child element of the document element, so that those "records"
+ * can be parsed separately.  Only enough markup is recognized to find
+ * element boundaries:  tags (with quoted attribute values), comments,
+ * processing instructions, CDATA sections, and the document type
+ * declaration.  Everything else is checked later, when the pieces are
+ * parsed.
+ *
+ * <P> Comments and processing instructions between records are skipped,
+ * as is anything following the end tag of the document element.
+ *
+ * @version $Revision$
+ */
+final class RecordSplitter
+{
+    private Reader		reader;
+    private String		publicId;
+    private String		systemId;
+    private Locale		locale;
+
+    // input buffer
+    private char		buf [] = new char [8 * 1024];
+    private int			start, finish;
+    private int			lineNumber = 1;
+    private boolean		sawCR;
+
+    // text being collected
+    private char		text [];
+    private int			length;
+    private boolean		copying;
+
+    private boolean		rootEmpty;
+    private int			recordLine;
+
+
+    RecordSplitter (Reader reader, String publicId, String systemId,
+	Locale locale, int size)
+    {
+	this.reader = reader;
+	this.publicId = publicId;
+	this.systemId = systemId;
+	this.locale = locale;
+	text = new char [size];
+    }
+
+    /**
+     * Returns the text of the prologue through the start tag of the
+     * document element, which is rewritten as an empty element tag.
+     */
+    char [] readPrologue ()
+    throws IOException, SAXException
+    {
+	int	c;
+
+	copying = true;
+	for (;;) {
+	    if (next () != '<')
+		continue;
+	    c = next ();
+	    if (c == '?')
+		skipPast ("?>");
+	    else if (c == '!') {
+		if (next () == '-')
+		    skipPast ("-->");
+		else
+		    scanDoctype ();
+	    } else {
+		rootEmpty = scanTag ();
+		break;
+	    }
+	}
+	if (!rootEmpty) {
+	    text [length - 1] = '/';
+	    append ('>');
+	}
+	copying = false;
+
+	char	retval [] = new char [length];
+	System.arraycopy (text, 0, retval, 0, length);
+	length = 0;
+	return retval;
+    }
+
+    /** Returns true if the document element has no content. */
+    boolean isRootEmpty ()
+	{ return rootEmpty; }
+
+    /**
+     * Appends the text of the next record to the collected text,
+     * returning false instead if the end tag of the document element
+     * was found.
+     */
+    boolean nextRecord ()
+    throws IOException, SAXException
+    {
+	int	c;
+
+	if (rootEmpty)
+	    return false;
+	for (;;) {
+	    c = next ();
+	    if (c == ' ' || c == '\t' || c == '\n' || c == '\r')
+		continue;
+	    if (c != '<')
+		fatal ("P-085");
+
+	    recordLine = lineNumber;
+	    c = next ();
+	    if (c == '/') {
+		scanTag ();
+		return false;
+	    } else if (c == '?') {
+		skipPast ("?>");
+		continue;
+	    } else if (c == '!') {
+		if (next () != '-')
+		    fatal ("P-085");
+		skipPast ("-->");
+		continue;
+	    } else if (c == '>' || c == ' ' || c == '\t'
+		    || c == '\n' || c == '\r')
+		fatal ("P-085");
+	    break;
+	}
+
+	copying = true;
+	append ('<');
+	append ((char) c);
+	for (int depth = scanTag () ? 0 : 1; depth > 0; ) {
+	    if (next () != '<')
+		continue;
+	    c = next ();
+	    if (c == '/') {
+		scanTag ();
+		depth--;
+	    } else if (c == '?')
+		skipPast ("?>");
+	    else if (c == '!') {
+		c = next ();
+		if (c == '-')
+		    skipPast ("-->");
+		else if (c == '[')
+		    skipPast ("]]>");
+		// else not well formed; the parser will report it
+	    } else if (!scanTag ())
+		depth++;
+	}
+	copying = false;
+	return true;
+    }
+
+    /** Returns the line on which the last record started. */
+    int getRecordLine ()
+	{ return recordLine; }
+
+    /** Returns how many characters of text have been collected. */
+    int getLength ()
+	{ return length; }
+
+    /** Returns the collected text, and starts collecting afresh. */
+    char [] takeText ()
+    {
+	char	retval [] = text;
+
+	text = new char [retval.length];
+	length = 0;
+	return retval;
+    }
+
+
+    // reads through the end of a tag, returning true if it was an
+    // empty element tag
+    private boolean scanTag ()
+    throws IOException, SAXException
+    {
+	int	c, prev = 0, quote = 0;
+
+	for (;;) {
+	    c = next ();
+	    if (quote != 0) {
+		if (c == quote)
+		    quote = 0;
+	    } else if (c == '"' || c == '\'')
+		quote = c;
+	    else if (c == '>')
+		return prev == '/';
+	    prev = c;
+	}
+    }
+
+    // reads through the end of the DOCTYPE declaration, including
+    // any internal subset
+    private void scanDoctype ()
+    throws IOException, SAXException
+    {
+	int	c, quote = 0;
+	boolean	inSubset = false;
+
+	for (;;) {
+	    c = next ();
+	    if (quote != 0) {
+		if (c == quote)
+		    quote = 0;
+	    } else if (c == '"' || c == '\'')
+		quote = c;
+	    else if (c == '[')
+		inSubset = true;
+	    else if (c == ']')
+		inSubset = false;
+	    else if (c == '>' && !inSubset)
+		return;
+	    else if (c == '<' && inSubset) {
+		c = next ();
+		if (c == '?')
+		    skipPast ("?>");
+		else if (c == '!' && next () == '-')
+		    skipPast ("-->");
+	    }
+	}
+    }
+
+    // reads through the end of the (two or three character) delimiter
+    private void skipPast (String delim)
+    throws IOException, SAXException
+    {
+	int	n = delim.length ();
+	int	c, c1 = -1, c2 = -1;
+
+	for (;;) {
+	    c = next ();
+	    if (c == delim.charAt (n - 1)
+		    && c1 == delim.charAt (n - 2)
+		    && (n == 2 || c2 == delim.charAt (0)))
+		return;
+	    c2 = c1;
+	    c1 = c;
+	}
+    }
+
+    // returns the next character, collecting it if appropriate
+    private char next ()
+    throws IOException, SAXException
+    {
+	while (start >= finish) {
+	    finish = reader.read (buf, 0, buf.length);
+	    start = 0;
+	    if (finish < 0) {
+		finish = 0;
+		fatal ("P-003");
+	    }
+	}
+
+	char	c = buf [start++];
+
+	if (c == '\n') {
+	    if (!sawCR)
+		lineNumber++;
+	    sawCR = false;
+	} else if (c == '\r') {
+	    lineNumber++;
+	    sawCR = true;
+	} else
+	    sawCR = false;
+
+	if (copying)
+	    append (c);
+	return c;
+    }
+
+    private void append (char c)
+    {
+	if (length == text.length) {
+	    char	tmp [] = new char [text.length * 2];
+
+	    System.arraycopy (text, 0, tmp, 0, length);
+	    text = tmp;
+	}
+	text [length++] = c;
+    }
+
+    private void fatal (String messageId)
+    throws SAXException
+    {
+	throw new SAXParseException (
+	    Parser2.messages.getMessage (locale, messageId),
+	    publicId, systemId, lineNumber, -1);
+    }
+}
@@ -67,6 +67,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.HttpURLConnection;
 import java.util.Hashtable;
+import java.util.Vector;
 
 import org.xml.sax.*;
 
@@ -111,8 +112,8 @@ import org.xml.sax.*;
  * and will often be used for external DTD components.  For example, packages
  * shipping DTD files as resources in JAR files can eliminate network traffic
  * when accessing them, and sites may provide local caches of common DTDs.
- * Note that no particular catalog syntax is supported by this class, only
- * the notion of a set of entries.
+ * Entries may be registered directly, or loaded from files using the
+ * OASIS XML Catalog syntax.
  *
  * </UL>
  *
@@ -139,6 +140,12 @@ public class Resolver implements EntityResolver
     private Hashtable		id2resource;
     private Hashtable		id2loader;
 
+    // URIs of OASIS XML catalogs, the catalogs loaded so far (including
+    // ones they refer to), and the results of using them
+    private Vector		catalogs;
+    private Hashtable		loadedCatalogs;
+    private Hashtable		catalogResults;
+
     //
     // table of MIME content types (less attributes!) known
     // to be mostly "OK" to use with XML MIME entities.  the
@@ -343,8 +350,9 @@ public class Resolver implements EntityResolver
      * be mapped to a preferred form of the entity, the URI is used.  To
      * resolve the entity, first a local catalog mapping names to URIs is
      * consulted.  If no mapping is found there, a catalog mapping names
-     * to java resources is consulted.  Finally, if neither mapping found
-     * a copy of the entity, the specified URI is used.
+     * to java resources is consulted, and then any XML catalogs.  Finally,
+     * if none of those found a copy of the entity, the specified URI
+     * is used.
      *
      * <P> When a URI is used, <a href="#createInputSource">
      * createInputSource</a> is used to correctly deduce the character
@@ -372,6 +380,8 @@ public class Resolver implements EntityResolver
 	    URL			url;
 	    URLConnection	conn;
 	    
+	    if (mappedURI == null)
+		mappedURI = catalogURI (name, uri);
 	    if (mappedURI != null)
 		uri = mappedURI;
 	    else if (uri == null)
@@ -420,7 +430,8 @@ public class Resolver implements EntityResolver
 
 
     // maps the public ID to an alternate URI, if one is registered
-    private String name2uri (String publicId)
+    // package private
+    String name2uri (String publicId)
     {
 	if (publicId == null || id2uri == null)
 	    return null;
@@ -449,8 +460,83 @@ public class Resolver implements EntityResolver
     }
 
 
+    /**
+     * Adds an OASIS XML Catalog to those consulted when resolving
+     * entities.  The catalog is loaded immediately; catalogs it refers
+     * to (with <em>nextCatalog</em> or delegation entries) are loaded
+     * when they are first needed, and are ignored if they can't be
+     * loaded.  Catalogs are consulted in the order they were added,
+     * after any entries registered directly with this resolver.
+     *
+     * @param uri The absolute URI of the catalog file
+     * @exception IOException If the catalog can't be read
+     * @exception SAXException If the catalog is not well formed
+     */
+    public void addCatalog (String uri)
+    throws IOException, SAXException
+    {
+	XmlCatalog	catalog = XmlCatalog.load (uri);
+
+	// readers use the old vector and result table until they're
+	// replaced here, so neither is changed once in use
+	synchronized (this) {
+	    Vector	temp = new Vector (2);
+
+	    if (catalogs == null)
+		loadedCatalogs = new Hashtable (7);
+	    else {
+		for (int i = 0; i < catalogs.size (); i++)
+		    temp.addElement (catalogs.elementAt (i));
+	    }
+	    loadedCatalogs.put (uri, catalog);
+	    temp.addElement (uri);
+	    catalogs = temp;
+	    catalogResults = new Hashtable (17);
+	}
+    }
+
+    // maps the IDs using the XML catalogs, if any; catalogs may be
+    // fetched here, so no lock is held while they're consulted
+    // package private
+    String catalogURI (String publicId, String systemId)
+    {
+	Vector		catalogs;
+	Hashtable	loaded;
+	Hashtable	results;
+	String		key;
+	String		retval;
+
+	synchronized (this) {
+	    catalogs = this.catalogs;
+	    loaded = loadedCatalogs;
+	    results = catalogResults;
+	}
+	if (catalogs == null || (publicId == null && systemId == null))
+	    return null;
+
+	key = ((publicId == null) ? "" : publicId) + '\u0000'
+	    + ((systemId == null) ? "" : systemId);
+	retval = (String) results.get (key);
+	if (retval == null) {
+	    retval = XmlCatalog.resolve (catalogs, publicId, systemId,
+		    loaded);
+	    results.put (key, (retval == null) ? "" : retval);
+	}
+	return (retval == null || retval.length () == 0) ? null : retval;
+    }
+
+    // return the name of the resource registered for the public ID
+    // package private
+    String name2resource (String publicId)
+    {
+	if (publicId == null || id2resource == null)
+	    return null;
+	return (String) id2resource.get (publicId);
+    }
+
     // return the resource as a stream
-    private InputStream mapResource (String publicId)
+    // package private
+    InputStream mapResource (String publicId)
     {
 	// System.out.println ("++ PUBLIC: " + publicId);
 	if (publicId == null || id2resource == null)
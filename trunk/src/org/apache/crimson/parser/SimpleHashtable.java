@@ -194,6 +194,37 @@ final class SimpleHashtable implements Enumeration
 	return retval;
     }
 
+    /**
+     * Returns a separate enumeration of the keys in this hashtable.
+     * Unlike <em>keys</em>, this allocates an enumerator, so it may be
+     * used while other threads are reading (but not updating) the table.
+     */
+    public Enumeration sharedKeys ()
+    {
+	return new Enumeration () {
+	    private Entry	entry = null;
+	    private int		bucket = 0;
+
+	    public boolean hasMoreElements ()
+	    {
+		while (entry == null && bucket < table.length)
+		    entry = table [bucket++];
+		return entry != null;
+	    }
+
+	    public Object nextElement ()
+	    {
+		Object	retval;
+
+		if (!hasMoreElements ())
+		    throw new IllegalStateException ();
+		retval = entry.key;
+		entry = entry.next;
+		return retval;
+	    }
+	};
+    }
+
 
     /**
      * Returns the value to which the specified key is mapped in this hashtable.
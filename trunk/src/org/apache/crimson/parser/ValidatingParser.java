@@ -278,13 +278,20 @@ public class ValidatingParser extends Parser2
 	// most types of content model have very simple validation
 	// algorithms; only "children" needs mutable state.
 	//
+	ElementValidator	validator;
+
 	if (element.contentType == null || strANY == element.contentType)
-	    element.validator = ElementValidator.ANY;
+	    validator = ElementValidator.ANY;
 	else if (strEMPTY == element.contentType)
-	    element.validator = EMPTY;
+	    validator = EMPTY;
 	else // (element.contentType.charAt (1) == '#')
-	    element.validator = new MixedValidator (element);
-	return element.validator;
+	    validator = new MixedValidator (element);
+
+	// these validators report errors to this parser, so they
+	// can't be saved in declarations other parsers are using
+	if (!isSharingDeclarations ())
+	    element.validator = validator;
+	return validator;
     }
 
     private final EmptyValidator EMPTY = new EmptyValidator ();
@@ -69,6 +69,14 @@ import org.xml.sax.ext.*;
 
 /**
  * This implements the SAX2 XMLReader.
+ *
+ * <P> Besides the SAX2 core features, this recognizes
+ * <em>http://apache.org/xml/features/validate-only</em>.  When it is
+ * true, documents are only checked:  errors are reported to the error
+ * handler, but no other handlers are used.  When
+ * <em>http://apache.org/xml/features/coalesce-characters</em> is true,
+ * each run of character data is reported with one call.
+ *
  * @author Rajiv Mordani
  * @author Edwin Goei
  * @version $Revision$
@@ -94,6 +102,12 @@ public class XMLReaderImpl implements XMLReader {
     private final static String LEXICAL_PARAMETER_ENTITIES = FEATURES +
             "lexical-handler/parameter-entities";
 
+    // Crimson features
+    private final static String VALIDATE_ONLY =
+            "http://apache.org/xml/features/validate-only";
+    private final static String COALESCE_CHARACTERS =
+            "http://apache.org/xml/features/coalesce-characters";
+
     // Properties
     private static final String PROPERTIES = "http://xml.org/sax/properties/";
     private final static String LEXICAL_HANDLER =
@@ -105,6 +119,10 @@ public class XMLReaderImpl implements XMLReader {
     private boolean namespaces = true;
     private boolean prefixes = false;
     private boolean validation = false;
+    private boolean externalGeneral = true;
+    private boolean externalParameter = true;
+    private boolean validateOnly = false;
+    private boolean coalesce = false;
 
     // Properties
     private LexicalHandler lexicalHandler;
@@ -156,9 +174,15 @@ public class XMLReaderImpl implements XMLReader {
             return prefixes;
         } else if (name.equals(VALIDATION)) {
             return validation;
-        } else if (name.equals(STRING_INTERNING) ||
-                   name.equals(EXTERNAL_GENERAL) ||
-                   name.equals(EXTERNAL_PARAMETER)) {
+        } else if (name.equals(EXTERNAL_GENERAL)) {
+            return externalGeneral;
+        } else if (name.equals(EXTERNAL_PARAMETER)) {
+            return externalParameter;
+        } else if (name.equals(VALIDATE_ONLY)) {
+            return validateOnly;
+        } else if (name.equals(COALESCE_CHARACTERS)) {
+            return coalesce;
+        } else if (name.equals(STRING_INTERNING)) {
             return true;
         } else if (name.equals(LEXICAL_PARAMETER_ENTITIES)) {
             return false;
@@ -199,9 +223,20 @@ public class XMLReaderImpl implements XMLReader {
                 parser = null;
             }
             validation = state;
-        } else if (name.equals(STRING_INTERNING) ||
-                   name.equals(EXTERNAL_GENERAL) ||
-                   name.equals(EXTERNAL_PARAMETER)) {
+        } else if (name.equals(EXTERNAL_GENERAL)) {
+            // n.b. validating parsers read external entities anyway
+            checkNotParsing("feature", name);
+            externalGeneral = state;
+        } else if (name.equals(EXTERNAL_PARAMETER)) {
+            checkNotParsing("feature", name);
+            externalParameter = state;
+        } else if (name.equals(VALIDATE_ONLY)) {
+            checkNotParsing("feature", name);
+            validateOnly = state;
+        } else if (name.equals(COALESCE_CHARACTERS)) {
+            checkNotParsing("feature", name);
+            coalesce = state;
+        } else if (name.equals(STRING_INTERNING)) {
             checkNotParsing("feature", name);
             if (state == false) {
                 throw new SAXNotSupportedException("Feature: " + name
@@ -435,6 +470,9 @@ public class XMLReaderImpl implements XMLReader {
         // feature and the handlers in an arbritrary order.  This allows us
         // to reuse existing parser instances when possible.
         parser.setNamespaceFeatures(namespaces, prefixes);
+        parser.setExternalEntityFeatures(externalGeneral, externalParameter);
+        parser.setValidateOnly(validateOnly);
+        parser.setCoalescing(coalesce);
         parser.setContentHandler(contentHandler);
         parser.setDTDHandler(dtdHandler);
         parser.setErrorHandler(errorHandler);
@@ -0,0 +1,518 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.parser;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+
+/**
+ * This class holds the entries of one OASIS XML Catalog file, compiled
+ * into tables which are consulted when resolving external identifiers.
+ * The <em>public</em>, <em>system</em>, <em>rewriteSystem</em>,
+ * <em>delegatePublic</em>, <em>delegateSystem</em>, and
+ * <em>nextCatalog</em> entries are supported, along with <em>group</em>
+ * elements and the <em>prefer</em> and <em>xml:base</em> attributes.
+ * Other entries are ignored, as are elements that aren't in the catalog
+ * namespace.
+ *
+ * <P> Instances are not modified after they're loaded, so they may be
+ * used by several threads.  Catalogs named by <em>nextCatalog</em> and
+ * delegation entries are loaded only when they're needed; the caller
+ * provides the table holding them.
+ *
+ * @see Resolver#addCatalog
+ *
+ * @version $Revision$
+ */
+final class XmlCatalog
+{
+    static final String		CATALOG_NS =
+			    "urn:oasis:names:tc:entity:xmlns:xml:catalog";
+
+    // limits nextCatalog and delegation chains, which may loop
+    private static final int	MAX_DEPTH = 16;
+
+    // marks catalogs which couldn't be loaded, so they're ignored
+    private static final Object	FAILED = new Object ();
+
+    // exact matches:  normalized ID --> Entry
+    private Hashtable		publicIds = new Hashtable ();
+    private Hashtable		systemIds = new Hashtable ();
+
+    // prefix matches:  Entry, or Vector of Entry for delegation
+    private PrefixTrie		rewriteSystem = new PrefixTrie ();
+    private PrefixTrie		delegatePublic = new PrefixTrie ();
+    private PrefixTrie		delegateSystem = new PrefixTrie ();
+
+    // catalog URIs
+    private Vector		nextCatalogs = new Vector (2);
+
+
+    private XmlCatalog () { }
+
+    /**
+     * Loads the catalog with the given (absolute) URI.
+     */
+    static XmlCatalog load (String uri)
+    throws IOException, SAXException
+    {
+	XmlCatalog	catalog = new XmlCatalog ();
+	XMLReaderImpl	reader = new XMLReaderImpl ();
+
+	// catalogs name their DTD, but don't need it
+	reader.setFeature (
+	    "http://xml.org/sax/features/external-general-entities", false);
+	reader.setFeature (
+	    "http://xml.org/sax/features/external-parameter-entities", false);
+	reader.setContentHandler (catalog.new Loader (new URL (uri)));
+	reader.parse (new InputSource (uri));
+	return catalog;
+    }
+
+    /**
+     * Returns the catalog with the given URI, loading it into the table
+     * if needed, or null if it can't be loaded.  The table may be shared
+     * by several threads; it isn't locked while a catalog loads, so two
+     * threads may occasionally both load one, and the first one stored
+     * is used.
+     */
+    static XmlCatalog get (String uri, Hashtable loaded)
+    {
+	Object		catalog = loaded.get (uri);
+
+	if (catalog == null) {
+	    try {
+		catalog = load (uri);
+	    } catch (Exception e) {
+		// resource failures mean the catalog is ignored
+		catalog = FAILED;
+	    }
+	    synchronized (loaded) {
+		Object	other = loaded.get (uri);
+
+		if (other != null)
+		    catalog = other;
+		else
+		    loaded.put (uri, catalog);
+	    }
+	}
+	return (catalog == FAILED) ? null : (XmlCatalog) catalog;
+    }
+
+    /**
+     * Returns the URI to use for the entity with the given public and
+     * system IDs, or null if the catalogs with the given URIs (and
+     * the catalogs they refer to) don't map it.
+     */
+    static String resolve (
+	Vector		catalogs,
+	String		publicId,
+	String		systemId,
+	Hashtable	loaded
+    ) {
+	// "urn:publicid:" URNs are just another way to write public IDs
+	if (systemId != null && systemId.startsWith ("urn:publicid:")) {
+	    String	temp = unwrapURN (systemId);
+
+	    if (publicId == null || normalizePublicId (publicId).equals (temp))
+		publicId = temp;
+	    systemId = null;
+	}
+	if (publicId != null) {
+	    if (publicId.startsWith ("urn:publicid:"))
+		publicId = unwrapURN (publicId);
+	    else
+		publicId = normalizePublicId (publicId);
+	}
+	return resolve (catalogs, publicId, systemId, loaded, 0);
+    }
+
+    private static String resolve (
+	Vector		catalogs,
+	String		publicId,
+	String		systemId,
+	Hashtable	loaded,
+	int		depth
+    ) {
+	if (depth > MAX_DEPTH)
+	    return null;
+	for (int i = 0; i < catalogs.size (); i++) {
+	    XmlCatalog	catalog = get ((String) catalogs.elementAt (i), loaded);
+	    String	retval;
+
+	    if (catalog == null)
+		continue;
+	    retval = catalog.resolve (publicId, systemId, loaded, depth);
+	    if (retval != null)
+		return retval;
+	}
+	return null;
+    }
+
+    // OASIS XML Catalogs 1.1, section 7.1.2 (external identifiers)
+    private String resolve (
+	String		publicId,
+	String		systemId,
+	Hashtable	loaded,
+	int		depth
+    ) {
+	Entry		entry;
+	Vector		delegates;
+
+	if (systemId != null) {
+	    if ((entry = (Entry) systemIds.get (systemId)) != null)
+		return entry.uri;
+	    if ((entry = (Entry) rewriteSystem.longestMatch (systemId))
+		    != null)
+		return entry.uri + systemId.substring (entry.key.length ());
+	    if ((delegates = delegateSystem.matches (systemId)) != null)
+		return delegate (delegates, null, systemId, loaded, depth);
+	}
+
+	if (publicId != null) {
+	    entry = (Entry) publicIds.get (publicId);
+	    if (entry != null && (systemId == null || entry.preferPublic))
+		return entry.uri;
+	    if ((delegates = delegatePublic.matches (publicId)) != null) {
+		// delegation follows the same preference
+		for (int i = delegates.size () - 1; i >= 0; i--) {
+		    Vector	v = (Vector) delegates.elementAt (i);
+
+		    for (int j = v.size () - 1; j >= 0; j--) {
+			if (systemId != null
+				&& !((Entry) v.elementAt (j)).preferPublic)
+			    v = removeElementAt (v, j);
+		    }
+		    if (v.isEmpty ())
+			delegates.removeElementAt (i);
+		    else
+			delegates.setElementAt (v, i);
+		}
+		if (!delegates.isEmpty ())
+		    return delegate (delegates, publicId, null,
+			    loaded, depth);
+	    }
+	}
+
+	return resolve (nextCatalogs, publicId, systemId, loaded, depth + 1);
+    }
+
+    // resolution continues only in the delegated catalogs, taking
+    // those with the longest matching prefix first
+    private static String delegate (
+	Vector		delegates,
+	String		publicId,
+	String		systemId,
+	Hashtable	loaded,
+	int		depth
+    ) {
+	Vector		catalogs = new Vector ();
+
+	for (int i = 0; i < delegates.size (); i++) {
+	    Vector	v = (Vector) delegates.elementAt (i);
+
+	    for (int j = 0; j < v.size (); j++) {
+		String	uri = ((Entry) v.elementAt (j)).uri;
+
+		if (!catalogs.contains (uri))
+		    catalogs.addElement (uri);
+	    }
+	}
+	return resolve (catalogs, publicId, systemId, loaded, depth + 1);
+    }
+
+    // vectors in the tries are shared, so they're copied before changes
+    private static Vector removeElementAt (Vector v, int index)
+    {
+	Vector		retval = (Vector) v.clone ();
+
+	retval.removeElementAt (index);
+	return retval;
+    }
+
+
+    /**
+     * Normalizes a public ID:  leading and trailing whitespace is
+     * removed, and other whitespace becomes single spaces.
+     */
+    static String normalizePublicId (String publicId)
+    {
+	StringBuffer	buf = new StringBuffer (publicId.length ());
+	boolean		space = false;
+
+	for (int i = 0; i < publicId.length (); i++) {
+	    char	c = publicId.charAt (i);
+
+	    if (c == ' ' || c == '\t' || c == '\n' || c == '\r')
+		space = (buf.length () != 0);
+	    else {
+		if (space)
+		    buf.append (' ');
+		buf.append (c);
+		space = false;
+	    }
+	}
+	return buf.toString ();
+    }
+
+    /**
+     * Converts a "urn:publicid:" URN (RFC 3151) to the public ID
+     * it represents.
+     */
+    static String unwrapURN (String urn)
+    {
+	StringBuffer	buf = new StringBuffer ();
+	int		len = urn.length ();
+
+	for (int i = 13 /* "urn:publicid:" */; i < len; i++) {
+	    char	c = urn.charAt (i);
+
+	    if (c == '+')
+		buf.append (' ');
+	    else if (c == ':')
+		buf.append ("//");
+	    else if (c == ';')
+		buf.append ("::");
+	    else if (c == '%' && i + 2 < len) {
+		String	escape = urn.substring (i + 1, i + 3).toUpperCase ();
+
+		i += 2;
+		if ("2B".equals (escape))
+		    buf.append ('+');
+		else if ("3A".equals (escape))
+		    buf.append (':');
+		else if ("2F".equals (escape))
+		    buf.append ('/');
+		else if ("3B".equals (escape))
+		    buf.append (';');
+		else if ("27".equals (escape))
+		    buf.append ('\'');
+		else if ("3F".equals (escape))
+		    buf.append ('?');
+		else if ("23".equals (escape))
+		    buf.append ('#');
+		else if ("25".equals (escape))
+		    buf.append ('%');
+		else {
+		    buf.append ('%');
+		    i -= 2;
+		}
+	    } else
+		buf.append (c);
+	}
+	return buf.toString ();
+    }
+
+
+    // one catalog entry:  the key is the ID or prefix being matched
+    private static final class Entry
+    {
+	String		key;
+	String		uri;
+	boolean		preferPublic;
+
+	Entry (String key, String uri, boolean preferPublic)
+	{
+	    this.key = key;
+	    this.uri = uri;
+	    this.preferPublic = preferPublic;
+	}
+    }
+
+
+    /**
+     * Builds the tables from the catalog's SAX events.
+     */
+    private final class Loader extends DefaultHandler
+    {
+	// one element per open element
+	private Vector		bases = new Vector ();
+	private Vector		prefers = new Vector ();
+	private int		ignored;
+
+	Loader (URL base)
+	{
+	    bases.addElement (base);
+	    prefers.addElement (Boolean.TRUE);
+	}
+
+	public void startElement (
+	    String	uri,
+	    String	localName,
+	    String	qName,
+	    Attributes	atts
+	) throws SAXException
+	{
+	    URL		base = (URL) bases.lastElement ();
+	    Boolean	prefer = (Boolean) prefers.lastElement ();
+	    String	value;
+
+	    // other namespaces are ignored, with their content
+	    if (ignored != 0 || !CATALOG_NS.equals (uri)) {
+		ignored++;
+		return;
+	    }
+
+	    if ((value = atts.getValue ("xml:base")) != null)
+		base = toURL (base, value);
+	    if ((value = atts.getValue ("prefer")) != null) {
+		if ("public".equals (value))
+		    prefer = Boolean.TRUE;
+		else if ("system".equals (value))
+		    prefer = Boolean.FALSE;
+	    }
+	    bases.addElement (base);
+	    prefers.addElement (prefer);
+
+	    if ("public".equals (localName))
+		addEntry (publicIds, null, atts, "publicId", "uri", true);
+	    else if ("system".equals (localName))
+		addEntry (systemIds, null, atts, "systemId", "uri", false);
+	    else if ("rewriteSystem".equals (localName))
+		addEntry (null, rewriteSystem, atts,
+			"systemIdStartString", "rewritePrefix", false);
+	    else if ("delegatePublic".equals (localName))
+		addEntry (null, delegatePublic, atts,
+			"publicIdStartString", "catalog", true);
+	    else if ("delegateSystem".equals (localName))
+		addEntry (null, delegateSystem, atts,
+			"systemIdStartString", "catalog", false);
+	    else if ("nextCatalog".equals (localName)) {
+		if ((value = atts.getValue ("catalog")) != null) {
+		    URL	url = toURL (base, value);
+
+		    if (url != null)
+			nextCatalogs.addElement (url.toString ());
+		}
+	    }
+	}
+
+	public void endElement (String uri, String localName, String qName)
+	{
+	    if (ignored != 0) {
+		ignored--;
+		return;
+	    }
+	    bases.removeElementAt (bases.size () - 1);
+	    prefers.removeElementAt (prefers.size () - 1);
+	}
+
+	private void addEntry (
+	    Hashtable	table,
+	    PrefixTrie	trie,
+	    Attributes	atts,
+	    String	keyName,
+	    String	uriName,
+	    boolean	isPublic
+	) {
+	    String	key = atts.getValue (keyName);
+	    String	value = atts.getValue (uriName);
+	    URL		url;
+	    Entry	entry;
+
+	    if (key == null || value == null)
+		return;
+	    if ((url = toURL ((URL) bases.lastElement (), value)) == null)
+		return;
+	    if (isPublic) {
+		if (key.startsWith ("urn:publicid:"))
+		    key = unwrapURN (key);
+		else
+		    key = normalizePublicId (key);
+	    }
+	    entry = new Entry (key, url.toString (),
+		    ((Boolean) prefers.lastElement ()).booleanValue ());
+
+	    // the first exact or rewrite entry for a key is used
+	    if (table != null) {
+		if (table.get (key) == null)
+		    table.put (key, entry);
+	    } else if (trie == rewriteSystem) {
+		if (trie.get (key) == null)
+		    trie.put (key, entry);
+	    } else {
+		Vector	v = (Vector) trie.get (key);
+
+		if (v == null) {
+		    v = new Vector (2);
+		    trie.put (key, v);
+		}
+		v.addElement (entry);
+	    }
+	}
+
+	private URL toURL (URL base, String uri)
+	{
+	    try {
+		return new URL (base, uri);
+	    } catch (MalformedURLException e) {
+		return null;
+	    }
+	}
+    }
+}
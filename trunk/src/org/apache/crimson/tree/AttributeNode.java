@@ -205,6 +205,24 @@ public class AttributeNode extends NamespacedNode implements Attr
         ownerElement = element;
     }
 
+    /**
+     * <b>DOM2:</b> Changes the prefix, and so the name this attribute
+     * is found by in its element's attribute list.
+     */
+    public void setPrefix(String prefix) throws DOMException {
+        String oldName = qName;
+
+        super.setPrefix(prefix);
+        ElementNode2.inheritedAttributeChanged(ownerElement, oldName);
+        ElementNode2.inheritedAttributeChanged(ownerElement, qName);
+        if (ownerElement instanceof ElementNode2) {
+            AttributeSet attributes = ((ElementNode2) ownerElement).attributes;
+            if (attributes != null) {
+                attributes.dropIndexes();
+            }
+        }
+    }
+
     
     /** DOM:  Returns the ATTRIBUTE_NODE node type constant. */
     public short getNodeType () { return ATTRIBUTE_NODE; }
@@ -231,6 +249,7 @@ public class AttributeNode extends NamespacedNode implements Attr
             throw new DomEx (DomEx.NO_MODIFICATION_ALLOWED_ERR);
         this.value = value;
         specified = true;
+        ElementNode2.inheritedAttributeChanged(ownerElement, qName);
     }
 
     /** Flags whether the source text specified the attribute. */
@@ -266,7 +285,13 @@ public class AttributeNode extends NamespacedNode implements Attr
      */
     public void writeChildrenXml (XmlWriteContext context) throws IOException
     {
-        Writer  out = context.getWriter ();
+        writeValue (context.getWriter (), value);
+    }
+
+    // package private
+    // Writes an attribute value, escaped for use within double quotes
+    static void writeValue (Writer out, String value) throws IOException
+    {
         for (int i = 0; i < value.length (); i++) {
             int c = value.charAt (i);
             switch (c) {
@@ -58,11 +58,9 @@
 
 package org.apache.crimson.tree;
 
-
 import java.io.CharArrayWriter;
 import java.io.Writer;
 import java.io.IOException;
-import java.util.Vector;
 
 import org.w3c.dom.*;
 
@@ -79,6 +77,13 @@ import org.apache.crimson.util.XmlNames;
  * uses an extended SAX API to see if an attribute was specified in the
  * document or was instead defaulted by attribute processing.
  *
+ * <P> Attributes are held in parallel arrays of names and values, and
+ * an <em>Attr</em> node is only created for an attribute when one is
+ * asked for, e.g. through <em>item</em> or <em>getNamedItem</em>.  From
+ * then on that node holds the attribute's state, so changes made
+ * through it are seen here.  Most parsed attributes are only ever read
+ * through their element, and never need a node.
+ *
  * @author David Brownell
  * @version $Revision$
  */
@@ -86,8 +91,28 @@ final
 class AttributeSet implements NamedNodeMap, XmlWritable
 {
     private boolean     readonly;
-    private Vector      list;
     private Element     ownerElement;
+
+    // Slot "i" is described by these arrays until nodes [i] is created;
+    // after that, the node is used instead.  Unmaterialized slots hold
+    // DOM Level 1 attributes if "level1" is set, else Level 2 ones.
+    private int                 count;
+    private String              qNames [];
+    private String              uris [];        // null if level1
+    private String              values [];
+    private String              defaults [];
+    private boolean             specified [];
+    private AttributeNode       nodes [];       // allocated on demand
+    private boolean             level1;
+
+    // Sets with more attributes than this are searched through hash
+    // indexes, which are built by compact() or when first needed,
+    // extended as slots are added, and discarded when slots are
+    // removed, replaced, or renamed.  Entries are slot numbers plus
+    // one; zero is empty.
+    private static final int    INDEX_THRESHOLD = 8;
+    private int                 nameIndex [];   // by qName
+    private int                 nsIndex [];     // by (namespace, local)
         
     private AttributeSet() {
         // no-arg constructor
@@ -96,7 +121,6 @@ class AttributeSet implements NamedNodeMap, XmlWritable
     /* Constructs an attribute list, with associated name scope. */
     // package private
     AttributeSet(Element ownerElement) {
-        list = new Vector (5);
         this.ownerElement = ownerElement;
     }
 
@@ -108,20 +132,7 @@ class AttributeSet implements NamedNodeMap, XmlWritable
     // package private
     AttributeSet (AttributeSet original, boolean deep)
     {
-        int             size = original.getLength ();
-
-        list = new Vector (size);
-        for (int i = 0; i < size; i++) {
-            Node        node = original.item (i);
-
-            if (!(node instanceof AttributeNode))
-                throw new IllegalArgumentException (((NodeBase)node).
-                                                getMessage ("A-003"));
-
-            AttributeNode attr = (AttributeNode)node;
-            node = attr.cloneAttributeNode(deep);
-            list.addElement (node);
-        }
+        this (original, deep, false);
     }
 
     /**
@@ -129,25 +140,45 @@ class AttributeSet implements NamedNodeMap, XmlWritable
      * "specified" Attr nodes are copied.  Copy is always deep.
      */
     AttributeSet(AttributeSet original) {
-        int size = original.getLength();
-        list = new Vector(size);
+        this(original, true, true);
+    }
 
-        for (int i = 0; i < size; i++) {
-            Node node = original.item(i);
+    private AttributeSet(AttributeSet original, boolean deep,
+                         boolean specifiedOnly)
+    {
+        int     size = original.count;
 
-            if (!(node instanceof AttributeNode)) {
-                throw new IllegalArgumentException(((NodeBase)node).
-                                                   getMessage ("A-003"));
-            }
+        level1 = original.level1;
+        allocate(size);
+        for (int i = 0; i < size; i++) {
+            AttributeNode attr = original.nodes == null
+                                    ? null : original.nodes[i];
 
-            AttributeNode attr = (AttributeNode) node;
-            // Copy only specified attributes
-            if (attr.getSpecified()) {
-                node = attr.cloneAttributeNode(true);
-                list.addElement(node);
+            if (attr != null) {
+                if (specifiedOnly && !attr.getSpecified()) {
+                    continue;
+                }
+                if (nodes == null) {
+                    nodes = new AttributeNode[qNames.length];
+                }
+                nodes[count++] = attr.cloneAttributeNode(deep);
+            } else {
+                if (specifiedOnly && !original.specified[i]) {
+                    continue;
+                }
+                qNames[count] = original.qNames[i];
+                if (uris != null) {
+                    uris[count] = original.uris[i];
+                }
+                values[count] = original.values[i];
+                defaults[count] = original.defaults[i];
+                specified[count] = original.specified[i];
+                count++;
             }
         }
-        list.trimToSize();
+        if (specifiedOnly) {
+            trimToSize();
+        }
     }
 
     /**
@@ -162,7 +193,7 @@ class AttributeSet implements NamedNodeMap, XmlWritable
         int len = source.getLength();
         AttributesEx ex = null;
 
-        retval.list = new Vector(len);
+        retval.allocate(len);
         if (source instanceof AttributesEx) {
             ex = (AttributesEx) source;
         }
@@ -185,17 +216,14 @@ class AttributeSet implements NamedNodeMap, XmlWritable
                 }
             }
 
-            AttributeNode attrNode =
-                new AttributeNode(uri, qName,
-                                  source.getValue(i),
-                                  ex == null    // remember if it was specified
-                                  ? true
-                                  : ex.isSpecified(i),
-                                  ex == null    // remember any default value
-                                  ? null
-                                  : ex.getDefault(i));
-            retval.list.addElement(attrNode);
+            retval.qNames[i] = qName;
+            retval.uris[i] = uri;
+            retval.values[i] = source.getValue(i);
+            // remember if it was specified, and any default value
+            retval.specified[i] = (ex == null) ? true : ex.isSpecified(i);
+            retval.defaults[i] = (ex == null) ? null : ex.getDefault(i);
         }
+        retval.count = len;
         return retval;
     }
 
@@ -211,48 +239,423 @@ class AttributeSet implements NamedNodeMap, XmlWritable
         int len = source.getLength();
         AttributesEx ex = null;
 
-        retval.list = new Vector(len);
+        retval.level1 = true;
+        retval.allocate(len);
         if (source instanceof AttributesEx) {
             ex = (AttributesEx) source;
         }
 
 	for (int i = 0; i < len; i++) {
-            AttributeNode1 attrNode1 = new AttributeNode1(
-                source.getQName(i),
-                source.getValue(i),
-                ex == null	// remember if it was specified
-                    ? true
-                    : ex.isSpecified(i),
-                ex == null	// remember any default value
-                    ? null
-                    : ex.getDefault(i));
-	    retval.list.addElement(attrNode1);
+            retval.qNames[i] = source.getQName(i);
+            retval.values[i] = source.getValue(i);
+            // remember if it was specified, and any default value
+            retval.specified[i] = (ex == null) ? true : ex.isSpecified(i);
+            retval.defaults[i] = (ex == null) ? null : ex.getDefault(i);
 	}
+        retval.count = len;
         return retval;
     }
 
+    // allocates empty slot arrays
+    private void allocate(int size) {
+        qNames = new String[size];
+        if (!level1) {
+            uris = new String[size];
+        }
+        values = new String[size];
+        defaults = new String[size];
+        specified = new boolean[size];
+    }
+
+    // moves the first "count" slots into arrays of the given size
+    private void resize(int size) {
+        String          oldNames [] = qNames;
+        String          oldURIs [] = uris;
+        String          oldValues [] = values;
+        String          oldDefaults [] = defaults;
+        boolean         oldSpecified [] = specified;
+
+        allocate(size);
+        if (oldNames == null) {
+            return;
+        }
+        System.arraycopy(oldNames, 0, qNames, 0, count);
+        if (uris != null) {
+            System.arraycopy(oldURIs, 0, uris, 0, count);
+        }
+        System.arraycopy(oldValues, 0, values, 0, count);
+        System.arraycopy(oldDefaults, 0, defaults, 0, count);
+        System.arraycopy(oldSpecified, 0, specified, 0, count);
+        if (nodes != null) {
+            AttributeNode oldNodes [] = nodes;
+
+            nodes = new AttributeNode[size];
+            System.arraycopy(oldNodes, 0, nodes, 0, count);
+        }
+    }
+
+    // Returns the node for slot i, creating it if needed
+    private AttributeNode node(int i) {
+        if (nodes == null) {
+            nodes = new AttributeNode[qNames.length];
+        }
+
+        AttributeNode attr = nodes[i];
+
+        if (attr == null) {
+            if (level1) {
+                attr = new AttributeNode1(qNames[i], values[i],
+                                          specified[i], defaults[i]);
+            } else {
+                attr = new AttributeNode(uris[i], qNames[i], values[i],
+                                         specified[i], defaults[i]);
+            }
+            if (ownerElement != null) {
+                attr.setOwnerDocument(
+                    (XmlDocument) ownerElement.getOwnerDocument());
+                attr.setOwnerElement(ownerElement);
+            }
+            if (readonly) {
+                attr.setReadonly(true);
+            }
+            nodes[i] = attr;
+
+            // the node now holds this state
+            qNames[i] = null;
+            if (uris != null) {
+                uris[i] = null;
+            }
+            values[i] = null;
+            defaults[i] = null;
+        }
+        return attr;
+    }
+
+    // Slot accessors which don't create nodes
+
+    // package private
+    String qNameAt(int i) {
+        if (nodes != null && nodes[i] != null) {
+            return nodes[i].getNodeName();
+        }
+        return qNames[i];
+    }
+
+    // package private
+    String valueAt(int i) {
+        if (nodes != null && nodes[i] != null) {
+            return nodes[i].getValue();
+        }
+        return values[i];
+    }
+
+    // package private
+    boolean specifiedAt(int i) {
+        if (nodes != null && nodes[i] != null) {
+            return nodes[i].getSpecified();
+        }
+        return specified[i];
+    }
+
+    // package private
+    String defaultAt(int i) {
+        if (nodes != null && nodes[i] != null) {
+            return nodes[i].getDefaultValue();
+        }
+        return defaults[i];
+    }
+
+    // package private
+    String uriAt(int i) {
+        if (nodes != null && nodes[i] != null) {
+            return nodes[i].getNamespaceURI();
+        }
+        return level1 ? null : uris[i];
+    }
+
+    // package private
+    String localNameAt(int i) {
+        if (nodes != null && nodes[i] != null) {
+            return nodes[i].getLocalName();
+        }
+        return level1 ? null : XmlNames.getLocalPart(qNames[i]);
+    }
+
+    // package private
+    // Returns the slot holding this node, without creating any others
+    int indexOfNode(Node attr) {
+        if (nodes != null) {
+            for (int i = 0; i < count; i++) {
+                if (nodes[i] == attr) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Returns the slot holding the named attribute, or -1
+    private int indexOf(String name) {
+        if (count <= INDEX_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                if (qNameAt(i).equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int     table [] = nameIndex;
+
+        if (table == null) {
+            table = nameIndex = buildNameIndex();
+        }
+
+        int     mask = table.length - 1;
+
+        for (int h = name.hashCode() & mask; ; h = (h + 1) & mask) {
+            int i = table[h] - 1;
+            if (i < 0) {
+                return -1;
+            }
+            if (qNameAt(i).equals(name)) {
+                return i;
+            }
+        }
+    }
+
+    // Returns the slot holding the attribute with that local name and
+    // namespace, or -1.  Either may be null, matching only null.
+    private int indexOfNS(String namespaceURI, String localName) {
+        if (count <= INDEX_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                if (matchesNS(i, namespaceURI, localName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int     table [] = nsIndex;
+
+        if (table == null) {
+            table = nsIndex = buildNSIndex();
+        }
+
+        int     mask = table.length - 1;
+
+        for (int h = hashNS(namespaceURI, localName) & mask; ;
+                h = (h + 1) & mask) {
+            int i = table[h] - 1;
+            if (i < 0) {
+                return -1;
+            }
+            if (matchesNS(i, namespaceURI, localName)) {
+                return i;
+            }
+        }
+    }
+
+    private boolean matchesNS(int i, String namespaceURI, String localName) {
+        String iLocalName = localNameAt(i);
+        if (localName == iLocalName
+                || (localName != null && localName.equals(iLocalName))) {
+            String iNamespaceURI = uriAt(i);
+            return namespaceURI == iNamespaceURI
+                || (namespaceURI != null
+                    && namespaceURI.equals(iNamespaceURI));
+        }
+        return false;
+    }
+
+    private static int hashNS(String namespaceURI, String localName) {
+        int     h = (localName == null) ? 0 : localName.hashCode();
+
+        if (namespaceURI != null) {
+            h = h * 31 + namespaceURI.hashCode();
+        }
+        return h;
+    }
+
+    // Index tables are powers of two, kept at most half full
+    private int indexSize() {
+        int     size = 16;
+
+        while (size < count * 2) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    // Indexes are filled in before they're stored, so a reader never
+    // sees a partial one
+    private int[] buildNameIndex() {
+        int     table [] = new int[indexSize()];
+
+        for (int i = 0; i < count; i++) {
+            indexName(table, i);
+        }
+        return table;
+    }
+
+    private int[] buildNSIndex() {
+        int     table [] = new int[indexSize()];
+
+        for (int i = 0; i < count; i++) {
+            indexNS(table, i);
+        }
+        return table;
+    }
+
+    // Enters slot i in a qName index, unless an earlier slot has the
+    // same name; lookups always find the first match, like a scan would
+    private void indexName(int table [], int i) {
+        String  name = qNameAt(i);
+        int     mask = table.length - 1;
+        int     h = name.hashCode() & mask;
+
+        for (; table[h] != 0; h = (h + 1) & mask) {
+            if (qNameAt(table[h] - 1).equals(name)) {
+                return;
+            }
+        }
+        table[h] = i + 1;
+    }
+
+    // Same, for a (namespace, local name) index
+    private void indexNS(int table [], int i) {
+        String  namespaceURI = uriAt(i);
+        String  localName = localNameAt(i);
+        int     mask = table.length - 1;
+        int     h = hashNS(namespaceURI, localName) & mask;
+
+        for (; table[h] != 0; h = (h + 1) & mask) {
+            if (matchesNS(table[h] - 1, namespaceURI, localName)) {
+                return;
+            }
+        }
+        table[h] = i + 1;
+    }
+
+    // Called when slot numbers or names change
+    void dropIndexes() {
+        nameIndex = null;
+        nsIndex = null;
+    }
+
+    // Adds a slot for the given node
+    private void addNode(AttributeNode attr) {
+        if (qNames == null) {
+            resize(5);
+        } else if (count == qNames.length) {
+            // trimmed or copied sets may have empty arrays
+            resize(Math.max(5, count * 2));
+        }
+        if (nodes == null) {
+            nodes = new AttributeNode[qNames.length];
+        }
+        nodes[count] = attr;
+        specified[count] = attr.getSpecified();
+        count++;
+        ElementNode2.inheritedAttributeChanged(ownerElement, attr.getName());
+
+        // a full index is rebuilt at its next use
+        if (nameIndex != null) {
+            if (count * 2 > nameIndex.length) {
+                nameIndex = null;
+            } else {
+                indexName(nameIndex, count - 1);
+            }
+        }
+        if (nsIndex != null) {
+            if (count * 2 > nsIndex.length) {
+                nsIndex = null;
+            } else {
+                indexNS(nsIndex, count - 1);
+            }
+        }
+    }
+
+    // Removes slot i, closing the gap
+    private void removeSlot(int i) {
+        int     moved = count - i - 1;
+
+        ElementNode2.inheritedAttributeChanged(ownerElement, qNameAt(i));
+        dropIndexes();
+        if (moved > 0) {
+            System.arraycopy(qNames, i + 1, qNames, i, moved);
+            if (uris != null) {
+                System.arraycopy(uris, i + 1, uris, i, moved);
+            }
+            System.arraycopy(values, i + 1, values, i, moved);
+            System.arraycopy(defaults, i + 1, defaults, i, moved);
+            System.arraycopy(specified, i + 1, specified, i, moved);
+            if (nodes != null) {
+                System.arraycopy(nodes, i + 1, nodes, i, moved);
+            }
+        }
+        count--;
+        qNames[count] = null;
+        if (uris != null) {
+            uris[count] = null;
+        }
+        values[count] = null;
+        defaults[count] = null;
+        if (nodes != null) {
+            nodes[count] = null;
+        }
+    }
+
     // package private
-    void trimToSize () { list.trimToSize (); }
+    void trimToSize () {
+        if (qNames != null && qNames.length != count)
+            resize (count);
+    }
 
     // package private
     public void setReadonly ()
     {
         readonly = true;
-        for (int i = 0; i < list.size (); i++)
-            ((AttributeNode)list.elementAt (i)).setReadonly (true);
+        for (int i = 0; nodes != null && i < count; i++) {
+            if (nodes [i] != null)
+                nodes [i].setReadonly (true);
+        }
     }
 
     public boolean isReadonly () {
         if (readonly)
             return true;
-        for (int i = 0; i < list.size (); i++) {
-            if (((AttributeNode)list.elementAt (i)).isReadonly ()) {
+        for (int i = 0; nodes != null && i < count; i++) {
+            if (nodes[i] != null && nodes[i].isReadonly ()) {
                 return true; 
             }
         }
         return false;
     }
 
+    // package private
+    // Nodes are created now, since doing it later would modify
+    // a frozen document
+    void compact() {
+        trimToSize();
+        for (int i = 0; i < count; i++) {
+            node(i).compact(null);
+        }
+
+        // frozen documents are read without locks, so build indexes now
+        if (count > INDEX_THRESHOLD) {
+            nameIndex = buildNameIndex();
+            nsIndex = buildNSIndex();
+        }
+    }
+
+    // package private
+    void changeOwnerDeep(XmlDocument doc) {
+        for (int i = 0; nodes != null && i < count; i++) {
+            if (nodes[i] != null) {
+                nodes[i].changeOwnerDeep(doc);
+            }
+        }
+    }
+
     // package private
     void setOwnerElement(Element e) {
         if (e != null && ownerElement != null) {
@@ -261,39 +664,46 @@ class AttributeSet implements NamedNodeMap, XmlWritable
         ownerElement = e;
 
         // need to bind the attributes to this element
-        int length = list.size();
-
-        for (int i = 0; i < length; i++) {
-            AttributeNode node;
+        for (int i = 0; nodes != null && i < count; i++) {
+            AttributeNode node = nodes[i];
 
-            node = (AttributeNode)list.elementAt(i);
-            node.setOwnerElement(null);
-            node.setOwnerElement(e);
+            if (node != null) {
+                node.setOwnerElement(null);
+                node.setOwnerElement(e);
+            }
         }
     }
 
     // package private
     String getValue (String name)
     {
-        Attr    attr = (Attr) getNamedItem (name);
+        int     i = indexOf (name);
 
-        if (attr == null)
+        if (i < 0)
             return "";
         else
-            return attr.getValue ();
+            return valueAt (i);
+    }
+
+    // package private
+    String getValueNS (String namespaceURI, String localName)
+    {
+        int     i;
+
+        if (localName == null)
+            return "";
+        i = indexOfNS (namespaceURI, localName);
+        if (i < 0)
+            return "";
+        else
+            return valueAt (i);
     }
 
     public Node getNamedItem (String name)
     {
-        int     length = list.size ();
-        Node    value;
+        int     i = indexOf (name);
 
-        for (int i = 0; i < length; i++) {
-            value = item (i);
-            if (value.getNodeName ().equals (name))
-                return value;
-        }
-        return null;
+        return (i < 0) ? null : node (i);
     }
 
     /**
@@ -307,31 +717,20 @@ class AttributeSet implements NamedNodeMap, XmlWritable
             return null;
         }
 
-        for (int i = 0; i < list.size(); i++) {
-            Node value = item(i);
-            String iLocalName = value.getLocalName();
-            if (localName.equals(iLocalName)) {
-                String iNamespaceURI = value.getNamespaceURI();
-                if (namespaceURI == iNamespaceURI ||
-                    (namespaceURI != null
-                     && namespaceURI.equals(iNamespaceURI))) {
-                    return value;
-                }
-            }
-        }
-        return null;
+        int i = indexOfNS(namespaceURI, localName);
+        return (i < 0) ? null : node(i);
     }
 
     public int getLength ()
     {
-        return list.size ();
+        return count;
     }
 
     public Node item (int index)
     {
-        if (index < 0 || index >= list.size ())
+        if (index < 0 || index >= count)
             return null;
-        return (Node) list.elementAt (index);
+        return node (index);
     }
 
     public Node removeNamedItem(String name)
@@ -340,31 +739,12 @@ class AttributeSet implements NamedNodeMap, XmlWritable
         if (readonly) {
             throw new DomEx(DomEx.NO_MODIFICATION_ALLOWED_ERR);
         }
-        for (int i = 0; i < list.size(); i++) {
-            Node value = (Node)list.elementAt(i);
-            if (value.getNodeName().equals(name)) {
-                // Found a match
-                list.removeElementAt(i);
-
-                AttributeNode attr = (AttributeNode)value;
-
-                // Replace with Attr node of default value if it has one
-                String defaultValue = attr.getDefaultValue();
-                if (defaultValue != null) {
-                    AttributeNode newAttr = attr.cloneAttributeNode(true);
-                    newAttr.setOwnerElement(attr.getOwnerElement());
-                    newAttr.setValue(defaultValue);
-                    newAttr.setSpecified(false);
-                    list.addElement(newAttr);
-                }
 
-                // Set the ownerElement of attr to null since we're
-                // removing it
-                attr.setOwnerElement(null);
-                return attr;
-            }
+        int i = indexOf(name);
+        if (i < 0) {
+            throw new DomEx(DomEx.NOT_FOUND_ERR);
         }
-        throw new DomEx(DomEx.NOT_FOUND_ERR);
+        return removeAt(i);
     }
 
     /**
@@ -382,37 +762,33 @@ class AttributeSet implements NamedNodeMap, XmlWritable
             throw new DomEx(DomEx.NOT_FOUND_ERR);
         }
 
-        for (int i = 0; i < list.size(); i++) {
-            Node value = (Node)list.elementAt(i);
-            String iLocalName = value.getLocalName();
-            if (localName.equals(iLocalName)) {
-                String iNamespaceURI = value.getNamespaceURI();
-                if (namespaceURI == iNamespaceURI ||
-                    (namespaceURI != null
-                     && namespaceURI.equals(iNamespaceURI))) {
-                    // Found a match
-                    list.removeElementAt(i);
-
-                    AttributeNode attr = (AttributeNode)value;
-
-                    // Replace with Attr node of default value if it has one
-                    String defaultValue = attr.getDefaultValue();
-                    if (defaultValue != null) {
-                        AttributeNode newAttr = attr.cloneAttributeNode(true);
-                        newAttr.setOwnerElement(attr.getOwnerElement());
-                        newAttr.setValue(defaultValue);
-                        newAttr.setSpecified(false);
-                        list.addElement(newAttr);
-                    }
-
-                    // Set the ownerElement of attr to null since we're
-                    // removing it
-                    attr.setOwnerElement(null);
-                    return attr;
-                }
-            }
+        int i = indexOfNS(namespaceURI, localName);
+        if (i < 0) {
+            throw new DomEx(DomEx.NOT_FOUND_ERR);
         }
-        throw new DomEx(DomEx.NOT_FOUND_ERR);
+        return removeAt(i);
+    }
+
+    // Removes the attribute in slot i, returning its node
+    private Node removeAt(int i) {
+        AttributeNode attr = node(i);
+
+        removeSlot(i);
+
+        // Replace with Attr node of default value if it has one
+        String defaultValue = attr.getDefaultValue();
+        if (defaultValue != null) {
+            AttributeNode newAttr = attr.cloneAttributeNode(true);
+            newAttr.setOwnerElement(attr.getOwnerElement());
+            newAttr.setValue(defaultValue);
+            newAttr.setSpecified(false);
+            addNode(newAttr);
+        }
+
+        // Set the ownerElement of attr to null since we're
+        // removing it
+        attr.setOwnerElement(null);
+        return attr;
     }
 
     /**
@@ -437,22 +813,12 @@ class AttributeSet implements NamedNodeMap, XmlWritable
 	    throw new DomEx(DomEx.INUSE_ATTRIBUTE_ERR);
         }
 
-        int length = list.size();
-        AttributeNode oldAtt;
-        for (int i = 0; i < length; i++) {
-            oldAtt = (AttributeNode)item(i);
-            if (oldAtt.getNodeName().equals(value.getNodeName())) {
-                if (oldAtt.isReadonly()) {
-                    throw new DomEx(DomEx.NO_MODIFICATION_ALLOWED_ERR);
-                }
-                att.setOwnerElement(ownerElement);
-                list.setElementAt(att, i);
-		oldAtt.setOwnerElement(null);
-                return oldAtt;
-            }
+        int i = indexOf(value.getNodeName());
+        if (i >= 0) {
+            return replaceAt(i, att);
         }
         att.setOwnerElement(ownerElement);
-        list.addElement(value);
+        addNode(att);
         return null;
     }
     
@@ -478,36 +844,34 @@ class AttributeSet implements NamedNodeMap, XmlWritable
 
         // Both localName and namespaceURI can be null for Attr nodes
         // created by DOM Level 1 methods
-        String localName = attr.getLocalName();
-        String namespaceURI = attr.getNamespaceURI();
-
-        int length = list.size();
-        for (int i = 0; i < length; i++) {
-            AttributeNode oldNode = (AttributeNode) item(i);
-            String iLocalName = oldNode.getLocalName();
-            String iNamespaceURI = oldNode.getNamespaceURI();
-            if ((localName == iLocalName ||
-                 (localName != null && localName.equals(iLocalName)))
-                && (namespaceURI == iNamespaceURI ||
-                    (namespaceURI != null
-                     && namespaceURI.equals(iNamespaceURI)))) {
-                // Found a matching node so replace it
-                if (oldNode.isReadonly()) {
-                    throw new DomEx(DomEx.NO_MODIFICATION_ALLOWED_ERR);
-                }
-                attr.setOwnerElement(ownerElement);
-                list.setElementAt(attr, i);
-		oldNode.setOwnerElement(null);
-                return oldNode;
-            }
+        int i = indexOfNS(attr.getNamespaceURI(), attr.getLocalName());
+        if (i >= 0) {
+            // Found a matching node so replace it
+            return replaceAt(i, attr);
         }
 
         // Append instead of replace
         attr.setOwnerElement(ownerElement);
-        list.addElement(attr);
+        addNode(attr);
         return null;
     }
 
+    // Replaces the attribute in slot i, returning the old node
+    private Node replaceAt(int i, AttributeNode attr) {
+        AttributeNode oldNode = node(i);
+
+        if (oldNode.isReadonly()) {
+            throw new DomEx(DomEx.NO_MODIFICATION_ALLOWED_ERR);
+        }
+        attr.setOwnerElement(ownerElement);
+        nodes[i] = attr;
+        oldNode.setOwnerElement(null);
+        dropIndexes();
+        ElementNode2.inheritedAttributeChanged(ownerElement, attr.getName());
+        ElementNode2.inheritedAttributeChanged(ownerElement, oldNode.getName());
+        return oldNode;
+    }
+
     /**
      * Writes out the attribute list.  Attributes known to have been
      * derived from the DTD are not (at this time) written out.  Part
@@ -518,14 +882,21 @@ class AttributeSet implements NamedNodeMap, XmlWritable
     public void writeXml (XmlWriteContext context) throws IOException
     {
         Writer          out = context.getWriter ();
-        int             length = list.size ();
         AttributeNode   tmp;
 
-        for (int i = 0; i < length; i++) {
-            tmp = (AttributeNode) list.elementAt (i);
-            if (tmp.getSpecified ()) {
+        for (int i = 0; i < count; i++) {
+            tmp = (nodes == null) ? null : nodes [i];
+            if (tmp != null) {
+                if (tmp.getSpecified ()) {
+                    out.write (' ');
+                    tmp.writeXml (context);
+                }
+            } else if (specified [i]) {
                 out.write (' ');
-                tmp.writeXml (context);
+                out.write (qNames [i]);
+                out.write ("=\"");
+                AttributeNode.writeValue (out, values [i]);
+                out.write ('"');
             }
         }
     }
@@ -0,0 +1,420 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.tree;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+import org.apache.crimson.parser.AttributesEx;
+import org.apache.crimson.util.XmlNames;
+
+
+/**
+ * This class is a SAX2 ContentHandler which builds a compact, read-only
+ * DOM document.  It is used in place of <em>XmlDocumentBuilder</em>
+ * when documents are large and need only be read.  After each parse,
+ * the resulting document is available from <em>getDocument</em>.
+ *
+ * <P> Such documents hold their nodes as records in pages of memory
+ * outside the Java heap, rather than as an object per node, so they
+ * take a fraction of the memory of an <em>XmlDocument</em>, and their
+ * cost to the garbage collector doesn't grow with their size.  Given
+ * a storage directory, the pages are mapped from a temporary file
+ * there, so documents may be larger than the heap, or than memory.
+ * Node objects are created as the document is traversed, so the same
+ * node may be returned as different objects; use <em>equals</em> to
+ * compare them.  Nodes can't be modified, cloned, or imported into
+ * these documents, and DTD information isn't kept.  Once built, a
+ * document may be read by any number of threads at once.
+ *
+ * <P> To build one, register this as the content handler of an XML
+ * reader, and as its lexical handler if comments and CDATA sections
+ * should be kept:  <PRE>
+ *	CompactDocumentBuilder builder = new CompactDocumentBuilder ();
+ *
+ *	reader.setContentHandler (builder);
+ *	reader.setProperty ("http://xml.org/sax/properties/lexical-handler",
+ *		builder);
+ *	reader.parse (input);
+ *	document = builder.getDocument ();
+ * </PRE>
+ *
+ * <P> Names are given DOM Level 2 namespace information if the reader
+ * reports namespaces, else DOM Level 1 names are used; <em>xmlns</em>
+ * attributes are kept only if the reader reports them.  Attributes of
+ * type ID are recorded for use by <em>getElementById</em>.
+ *
+ * @version $Revision$
+ */
+public class CompactDocumentBuilder implements ContentHandler, LexicalHandler
+{
+    // used during parsing
+    private CompactStore	store;
+    private int			stack [];
+    private int			top;
+    private boolean		inDTD;
+    private boolean		inCDataSection;
+    private boolean		ignoreWhitespace;
+    private File		storageDirectory;
+
+    private Document		document;
+
+
+    /**
+     * Constructs a builder.
+     */
+    public CompactDocumentBuilder () { }
+
+    /**
+     * Returns the document built by the last parse, or null if none
+     * has completed.
+     */
+    public Document getDocument ()
+    {
+	return document;
+    }
+
+    /**
+     * Controls whether ignorable whitespace is discarded; by default
+     * it is kept as text.
+     */
+    public void setIgnoreWhitespace (boolean value)
+    {
+	ignoreWhitespace = value;
+    }
+
+    /**
+     * Returns true if ignorable whitespace is discarded.
+     */
+    public boolean getIgnoreWhitespace ()
+    {
+	return ignoreWhitespace;
+    }
+
+    /**
+     * Assigns the directory in which documents are stored, as memory
+     * mapped temporary files.  By default (null) they're stored in
+     * direct buffers, whose total size the JVM may limit (see its
+     * <em>MaxDirectMemorySize</em> option).  Use a directory for
+     * documents that may not fit in memory.
+     */
+    public void setStorageDirectory (File directory)
+    {
+	storageDirectory = directory;
+    }
+
+    /**
+     * Returns the directory in which documents are stored, or null
+     * if they're held in direct buffers.
+     */
+    public File getStorageDirectory ()
+    {
+	return storageDirectory;
+    }
+
+    // reports storage failures through SAX
+    private static SAXException storageFailure (IOException e)
+    {
+	return new SAXException (e);
+    }
+
+
+    // ContentHandler
+
+    public void setDocumentLocator (Locator locator)
+    {
+	// no-op
+    }
+
+    public void startDocument () throws SAXException
+    {
+	try {
+	    // release the file of a parse that failed
+	    if (store != null)
+		store.finish ();
+	    store = new CompactStore (storageDirectory);
+	} catch (IOException e) {
+	    throw storageFailure (e);
+	}
+	stack = new int [64];
+	top = 0;
+	stack [top] = 0;
+	inDTD = false;
+	inCDataSection = false;
+	document = null;
+    }
+
+    public void endDocument () throws SAXException
+    {
+	store.buildIdTable ();
+	try {
+	    store.finish ();
+	} catch (IOException e) {
+	    throw storageFailure (e);
+	}
+	document = store.getDocument ();
+	store = null;
+	stack = null;
+    }
+
+    public void startPrefixMapping (String prefix, String uri)
+    throws SAXException
+    {
+	// no-op; the DOM sees xmlns attributes
+    }
+
+    public void endPrefixMapping (String prefix) throws SAXException
+    {
+	// no-op
+    }
+
+    public void startElement (
+	String		namespaceURI,
+	String		localName,
+	String		qName,
+	Attributes	attributes
+    ) throws SAXException
+    {
+	int		element;
+
+	try {
+	    element = addElement (namespaceURI, localName, qName, attributes);
+	} catch (IOException e) {
+	    throw storageFailure (e);
+	}
+	if (++top == stack.length) {
+	    int		temp [] = new int [top * 2];
+
+	    System.arraycopy (stack, 0, temp, 0, top);
+	    stack = temp;
+	}
+	stack [top] = element;
+    }
+
+    private int addElement (
+	String		namespaceURI,
+	String		localName,
+	String		qName,
+	Attributes	attributes
+    ) throws IOException
+    {
+	int		element = store.add (Node.ELEMENT_NODE, stack [top]);
+	int		length = attributes.getLength ();
+	AttributesEx	ex = null;
+
+	// decided by the root element
+	if (top == 0)
+	    store.namespaces = (localName != null && localName.length () != 0);
+
+	store.set (element, CompactStore.NAME, store.symbol (qName));
+	if (store.namespaces && namespaceURI.length () != 0)
+	    store.set (element, CompactStore.URI, store.symbol (namespaceURI));
+
+	if (attributes instanceof AttributesEx)
+	    ex = (AttributesEx) attributes;
+	for (int i = 0; i < length; i++) {
+	    int		attr = store.add (Node.ATTRIBUTE_NODE, element);
+	    String	name = attributes.getQName (i);
+	    int		flags = CompactStore.SPECIFIED;
+
+	    store.set (attr, CompactStore.NAME, store.symbol (name));
+	    if (store.namespaces) {
+		String	uri;
+
+		// as in AttributeSet.createAttributeSet2 ()
+		if ("xmlns".equals (name)
+			|| "xmlns".equals (XmlNames.getPrefix (name)))
+		    uri = XmlNames.SPEC_XMLNS_URI;
+		else
+		    uri = attributes.getURI (i);
+		if (uri.length () != 0)
+		    store.set (attr, CompactStore.URI, store.symbol (uri));
+	    }
+	    store.setData (attr, attributes.getValue (i));
+
+	    if (ex != null && !ex.isSpecified (i))
+		flags = 0;
+	    if ("ID".equals (attributes.getType (i)))
+		flags |= CompactStore.ID;
+	    store.set (attr, CompactStore.FLAGS, flags);
+	}
+	store.set (element, CompactStore.FLAGS, length);
+	return element;
+    }
+
+    public void endElement (String namespaceURI, String localName,
+	String qName)
+    throws SAXException
+    {
+	top--;
+    }
+
+    public void characters (char buf [], int offset, int len)
+    throws SAXException
+    {
+	int		parent = stack [top];
+	int		last = store.get (parent, CompactStore.LAST);
+
+	try {
+	    // startCDATA made the section; else, merge adjacent text
+	    if (inCDataSection
+		    || (last >= 0 && store.get (last, CompactStore.TYPE)
+			== Node.TEXT_NODE)) {
+		store.appendData (last, buf, offset, len);
+		return;
+	    }
+	    store.appendData (store.add (Node.TEXT_NODE, parent),
+		    buf, offset, len);
+	} catch (IOException e) {
+	    throw storageFailure (e);
+	}
+    }
+
+    public void ignorableWhitespace (char buf [], int offset, int len)
+    throws SAXException
+    {
+	if (!ignoreWhitespace)
+	    characters (buf, offset, len);
+    }
+
+    public void processingInstruction (String target, String data)
+    throws SAXException
+    {
+	// ignore PIs in the DTD
+	if (inDTD)
+	    return;
+
+	try {
+	    int		pi = store.add (Node.PROCESSING_INSTRUCTION_NODE,
+				    stack [top]);
+
+	    store.set (pi, CompactStore.NAME, store.symbol (target));
+	    store.setData (pi, data);
+	} catch (IOException e) {
+	    throw storageFailure (e);
+	}
+    }
+
+    public void skippedEntity (String name) throws SAXException
+    {
+	// no-op
+    }
+
+
+    // LexicalHandler
+
+    public void startDTD (String name, String publicId, String systemId)
+    throws SAXException
+    {
+	inDTD = true;
+    }
+
+    public void endDTD () throws SAXException
+    {
+	inDTD = false;
+    }
+
+    public void startEntity (String name) throws SAXException
+    {
+	// no-op; entity references are always expanded
+    }
+
+    public void endEntity (String name) throws SAXException
+    {
+	// no-op
+    }
+
+    public void startCDATA () throws SAXException
+    {
+	try {
+	    store.add (Node.CDATA_SECTION_NODE, stack [top]);
+	} catch (IOException e) {
+	    throw storageFailure (e);
+	}
+	inCDataSection = true;
+    }
+
+    public void endCDATA () throws SAXException
+    {
+	inCDataSection = false;
+    }
+
+    public void comment (char buf [], int offset, int len)
+    throws SAXException
+    {
+	// ignore comments in the DTD
+	if (inDTD)
+	    return;
+	try {
+	    store.appendData (store.add (Node.COMMENT_NODE, stack [top]),
+		    buf, offset, len);
+	} catch (IOException e) {
+	    throw storageFailure (e);
+	}
+    }
+}
@@ -0,0 +1,745 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.tree;
+
+import org.w3c.dom.*;
+
+import org.apache.crimson.util.XmlNames;
+
+
+/**
+ * Node objects for documents held in a <em>CompactStore</em>.  These
+ * are views of records in the store, created when they're asked for,
+ * so the same node may be returned as different objects; compare
+ * nodes using <em>equals</em>.  Such documents are read-only:  methods
+ * which would modify them throw NO_MODIFICATION_ALLOWED_ERR, and they
+ * can't create, clone, or import nodes.
+ *
+ * <P> Since reading never changes the store, a completed document may
+ * be read by any number of threads at once.
+ *
+ * @version $Revision$
+ */
+abstract class CompactNode implements Node
+{
+    final CompactStore	store;
+    final int		node;
+
+    CompactNode (CompactStore store, int node)
+    {
+	this.store = store;
+	this.node = node;
+    }
+
+    final int get (int field)
+	{ return store.get (node, field); }
+
+    /** Returns true if the argument is a view of the same node. */
+    public boolean equals (Object o)
+    {
+	if (!(o instanceof CompactNode))
+	    return false;
+
+	CompactNode	n = (CompactNode) o;
+
+	return n.store == store && n.node == node;
+    }
+
+    public int hashCode ()
+	{ return node; }
+
+    static DomEx readonly ()
+	{ return new DomEx (DomEx.NO_MODIFICATION_ALLOWED_ERR); }
+
+    // names of elements and attributes, per DOM Level 2 rules
+
+    final String qName ()
+	{ return store.symbol (get (CompactStore.NAME)); }
+
+    final String uri ()
+	{ return store.namespaces ? store.symbol (get (CompactStore.URI)) : null; }
+
+    final String localName ()
+	{ return store.namespaces ? XmlNames.getLocalPart (qName ()) : null; }
+
+    final String prefix ()
+	{ return store.namespaces ? XmlNames.getPrefix (qName ()) : null; }
+
+
+    // DOM support
+
+    public String getNodeValue ()
+	{ return null; }
+
+    public void setNodeValue (String value)
+	{ throw readonly (); }
+
+    public Node getParentNode ()
+	{ return store.node (get (CompactStore.PARENT)); }
+
+    public NodeList getChildNodes ()
+	{ return new ChildList (); }
+
+    public Node getFirstChild ()
+	{ return store.node (get (CompactStore.FIRST)); }
+
+    public Node getLastChild ()
+	{ return store.node (get (CompactStore.LAST)); }
+
+    public Node getPreviousSibling ()
+	{ return store.node (get (CompactStore.PREV)); }
+
+    public Node getNextSibling ()
+	{ return store.node (get (CompactStore.NEXT)); }
+
+    public NamedNodeMap getAttributes ()
+	{ return null; }
+
+    public Document getOwnerDocument ()
+	{ return store.getDocument (); }
+
+    public Node insertBefore (Node newChild, Node refChild)
+	{ throw readonly (); }
+
+    public Node replaceChild (Node newChild, Node oldChild)
+	{ throw readonly (); }
+
+    public Node removeChild (Node oldChild)
+	{ throw readonly (); }
+
+    public Node appendChild (Node newChild)
+	{ throw readonly (); }
+
+    public boolean hasChildNodes ()
+	{ return get (CompactStore.FIRST) >= 0; }
+
+    public Node cloneNode (boolean deep)
+	{ throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+    /** Does nothing; adjacent text was merged as the store was built. */
+    public void normalize ()
+	{ }
+
+    public boolean isSupported (String feature, String version)
+	{ return DOMImplementationImpl.hasFeature0 (feature, version); }
+
+    public String getNamespaceURI ()
+	{ return null; }
+
+    public String getPrefix ()
+	{ return null; }
+
+    public void setPrefix (String prefix)
+	{ throw readonly (); }
+
+    public String getLocalName ()
+	{ return null; }
+
+    public boolean hasAttributes ()
+	{ return false; }
+
+    public String toString ()
+	{ return getNodeName (); }
+
+
+    // Lists children; remembers its position, for sequential access,
+    // and its length, since the store never changes.
+    final class ChildList implements NodeList
+    {
+	private int	lastIndex = -1;
+	private int	lastNode;
+	private int	length = -1;
+
+	public Node item (int index)
+	{
+	    int		i, n;
+
+	    if (index < 0)
+		return null;
+	    if (lastIndex >= 0 && index >= lastIndex) {
+		i = lastIndex;
+		n = lastNode;
+	    } else {
+		i = 0;
+		n = get (CompactStore.FIRST);
+	    }
+	    for (; n >= 0 && i < index; i++)
+		n = store.get (n, CompactStore.NEXT);
+	    if (n < 0)
+		return null;
+	    lastIndex = i;
+	    lastNode = n;
+	    return store.node (n);
+	}
+
+	public int getLength ()
+	{
+	    if (length < 0) {
+		int	count = 0;
+
+		for (int n = get (CompactStore.FIRST);
+			n >= 0;
+			n = store.get (n, CompactStore.NEXT))
+		    count++;
+		length = count;
+	    }
+	    return length;
+	}
+    }
+
+    //
+    // Lists the elements below a node, by name.  Since a subtree's
+    // records are contiguous, this just scans them.  Null names match
+    // everything.  The length is counted once.
+    //
+    final class TagList implements NodeList
+    {
+	private int	name;		// symbol, if not namespaced
+	private String	uri;
+	private String	local;
+	private boolean	namespaced;
+	private boolean	empty;
+
+	private int	lastIndex = -1;
+	private int	lastNode;
+	private int	length = -1;
+
+	TagList (String tagName)
+	{
+	    if (tagName != null) {
+		name = store.lookup (tagName);
+		empty = (name < 0);
+	    } else
+		name = -1;
+	}
+
+	TagList (String uri, String local)
+	{
+	    this.uri = uri;
+	    this.local = local;
+	    name = -1;
+	    namespaced = true;
+	}
+
+	private boolean matches (int n)
+	{
+	    if (store.get (n, CompactStore.TYPE) != ELEMENT_NODE)
+		return false;
+	    if (name >= 0)
+		return store.get (n, CompactStore.NAME) == name;
+	    if (!namespaced)
+		return true;
+
+	    CompactNode	e = store.node (n);
+
+	    if (local != null && !local.equals (e.getLocalName ()))
+		return false;
+	    return uri == null || uri.equals (e.getNamespaceURI ());
+	}
+
+	public Node item (int index)
+	{
+	    int		end, i, n;
+
+	    if (index < 0 || empty)
+		return null;
+	    end = store.subtreeEnd (node);
+	    if (lastIndex >= 0 && index >= lastIndex) {
+		i = lastIndex;
+		n = lastNode;
+	    } else {
+		i = -1;
+		n = node;
+	    }
+	    while (i < index) {
+		if (++n >= end)
+		    return null;
+		if (matches (n))
+		    i++;
+	    }
+	    lastIndex = i;
+	    lastNode = n;
+	    return store.node (n);
+	}
+
+	public int getLength ()
+	{
+	    if (empty)
+		return 0;
+	    if (length < 0) {
+		int	end = store.subtreeEnd (node);
+		int	count = 0;
+
+		for (int n = node + 1; n < end; n++)
+		    if (matches (n))
+			count++;
+		length = count;
+	    }
+	    return length;
+	}
+    }
+
+
+    /**
+     * The document node.
+     */
+    static final class DocumentView extends CompactNode implements Document
+    {
+	DocumentView (CompactStore store)
+	    { super (store, 0); }
+
+	public short getNodeType ()
+	    { return DOCUMENT_NODE; }
+
+	public String getNodeName ()
+	    { return "#document"; }
+
+	public Document getOwnerDocument ()
+	    { return null; }
+
+	/** Returns null; DTD information isn't kept. */
+	public DocumentType getDoctype ()
+	    { return null; }
+
+	public DOMImplementation getImplementation ()
+	    { return DOMImplementationImpl.getDOMImplementation (); }
+
+	public Element getDocumentElement ()
+	{
+	    for (int n = get (CompactStore.FIRST);
+		    n >= 0;
+		    n = store.get (n, CompactStore.NEXT)) {
+		if (store.get (n, CompactStore.TYPE) == ELEMENT_NODE)
+		    return (Element) store.node (n);
+	    }
+	    return null;
+	}
+
+	public NodeList getElementsByTagName (String tagName)
+	    { return new TagList ("*".equals (tagName) ? null : tagName); }
+
+	public NodeList getElementsByTagNameNS (String uri, String local)
+	{
+	    return new TagList ("*".equals (uri) ? null : uri,
+		    "*".equals (local) ? null : local);
+	}
+
+	/**
+	 * Returns the element with an attribute of type ID which has
+	 * the given value, or null.  ID types are known only if the
+	 * parser reported them.
+	 */
+	public Element getElementById (String id)
+	    { return (Element) store.node (store.getElementById (id)); }
+
+	// these documents can't hold new nodes
+
+	public Element createElement (String tagName)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public DocumentFragment createDocumentFragment ()
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public Text createTextNode (String data)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public Comment createComment (String data)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public CDATASection createCDATASection (String data)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public ProcessingInstruction createProcessingInstruction (
+		String target, String data)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public Attr createAttribute (String name)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public EntityReference createEntityReference (String name)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public Node importNode (Node importedNode, boolean deep)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public Element createElementNS (String uri, String qName)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+
+	public Attr createAttributeNS (String uri, String qName)
+	    { throw new DomEx (DomEx.NOT_SUPPORTED_ERR); }
+    }
+
+
+    /**
+     * Elements; their attributes are the records which follow them.
+     */
+    static final class ElementView extends CompactNode
+	implements Element, NamedNodeMap
+    {
+	ElementView (CompactStore store, int node)
+	    { super (store, node); }
+
+	public short getNodeType ()
+	    { return ELEMENT_NODE; }
+
+	public String getNodeName ()
+	    { return qName (); }
+
+	public String getTagName ()
+	    { return qName (); }
+
+	public String getNamespaceURI ()
+	    { return uri (); }
+
+	public String getPrefix ()
+	    { return prefix (); }
+
+	public String getLocalName ()
+	    { return localName (); }
+
+	public boolean hasAttributes ()
+	    { return get (CompactStore.FLAGS) != 0; }
+
+	public NamedNodeMap getAttributes ()
+	    { return this; }
+
+	// Returns the record of the named attribute, or -1
+	private int indexOf (String name)
+	{
+	    int		symbol = store.lookup (name);
+	    int		last = node + get (CompactStore.FLAGS);
+
+	    if (symbol < 0)
+		return -1;
+	    for (int n = node + 1; n <= last; n++)
+		if (store.get (n, CompactStore.NAME) == symbol)
+		    return n;
+	    return -1;
+	}
+
+	// Returns the record of the attribute, or -1
+	private int indexOf (String uri, String local)
+	{
+	    int		last = node + get (CompactStore.FLAGS);
+
+	    if (local == null || !store.namespaces)
+		return -1;
+	    for (int n = node + 1; n <= last; n++) {
+		String	temp = store.symbol (store.get (n, CompactStore.URI));
+
+		if ((uri == null ? temp == null : uri.equals (temp))
+			&& local.equals (XmlNames.getLocalPart (
+			    store.symbol (store.get (n, CompactStore.NAME)))))
+		    return n;
+	    }
+	    return -1;
+	}
+
+	public String getAttribute (String name)
+	{
+	    int		n = indexOf (name);
+
+	    return (n < 0) ? "" : store.getData (n);
+	}
+
+	public String getAttributeNS (String uri, String local)
+	{
+	    int		n = indexOf (uri, local);
+
+	    return (n < 0) ? "" : store.getData (n);
+	}
+
+	public Attr getAttributeNode (String name)
+	    { return (Attr) store.node (indexOf (name)); }
+
+	public Attr getAttributeNodeNS (String uri, String local)
+	    { return (Attr) store.node (indexOf (uri, local)); }
+
+	public boolean hasAttribute (String name)
+	    { return indexOf (name) >= 0; }
+
+	public boolean hasAttributeNS (String uri, String local)
+	    { return indexOf (uri, local) >= 0; }
+
+	public NodeList getElementsByTagName (String tagName)
+	    { return new TagList ("*".equals (tagName) ? null : tagName); }
+
+	public NodeList getElementsByTagNameNS (String uri, String local)
+	{
+	    return new TagList ("*".equals (uri) ? null : uri,
+		    "*".equals (local) ? null : local);
+	}
+
+	public void setAttribute (String name, String value)
+	    { throw readonly (); }
+
+	public void removeAttribute (String name)
+	    { throw readonly (); }
+
+	public Attr setAttributeNode (Attr newAttr)
+	    { throw readonly (); }
+
+	public Attr removeAttributeNode (Attr oldAttr)
+	    { throw readonly (); }
+
+	public void setAttributeNS (String uri, String qName, String value)
+	    { throw readonly (); }
+
+	public void removeAttributeNS (String uri, String local)
+	    { throw readonly (); }
+
+	public Attr setAttributeNodeNS (Attr newAttr)
+	    { throw readonly (); }
+
+	// NamedNodeMap, for the attributes
+
+	public Node getNamedItem (String name)
+	    { return store.node (indexOf (name)); }
+
+	public Node getNamedItemNS (String uri, String local)
+	    { return store.node (indexOf (uri, local)); }
+
+	public Node item (int index)
+	{
+	    if (index < 0 || index >= get (CompactStore.FLAGS))
+		return null;
+	    return store.node (node + 1 + index);
+	}
+
+	public int getLength ()
+	    { return get (CompactStore.FLAGS); }
+
+	public Node setNamedItem (Node arg)
+	    { throw readonly (); }
+
+	public Node removeNamedItem (String name)
+	    { throw readonly (); }
+
+	public Node setNamedItemNS (Node arg)
+	    { throw readonly (); }
+
+	public Node removeNamedItemNS (String uri, String local)
+	    { throw readonly (); }
+    }
+
+
+    /**
+     * Attributes; they have no parent or children, just an owner.
+     */
+    static final class AttrView extends CompactNode implements Attr
+    {
+	AttrView (CompactStore store, int node)
+	    { super (store, node); }
+
+	public short getNodeType ()
+	    { return ATTRIBUTE_NODE; }
+
+	public String getNodeName ()
+	    { return qName (); }
+
+	public String getName ()
+	    { return qName (); }
+
+	public String getNamespaceURI ()
+	    { return uri (); }
+
+	public String getPrefix ()
+	    { return prefix (); }
+
+	public String getLocalName ()
+	    { return localName (); }
+
+	public String getNodeValue ()
+	    { return store.getData (node); }
+
+	public String getValue ()
+	    { return store.getData (node); }
+
+	public void setValue (String value)
+	    { throw readonly (); }
+
+	public boolean getSpecified ()
+	    { return (get (CompactStore.FLAGS) & CompactStore.SPECIFIED) != 0; }
+
+	public Element getOwnerElement ()
+	    { return (Element) store.node (get (CompactStore.PARENT)); }
+
+	public Node getParentNode ()
+	    { return null; }
+
+	public Node getPreviousSibling ()
+	    { return null; }
+
+	public Node getNextSibling ()
+	    { return null; }
+    }
+
+
+    /**
+     * Nodes holding character data.
+     */
+    static abstract class DataView extends CompactNode
+	implements CharacterData
+    {
+	DataView (CompactStore store, int node)
+	    { super (store, node); }
+
+	public String getNodeValue ()
+	    { return store.getData (node); }
+
+	public String getData ()
+	    { return store.getData (node); }
+
+	public int getLength ()
+	    { return get (CompactStore.LENGTH); }
+
+	public String substringData (int offset, int count)
+	{
+	    int		length = getLength ();
+
+	    if (offset < 0 || offset > length || count < 0)
+		throw new DomEx (DOMException.INDEX_SIZE_ERR);
+	    count = Math.min (count, length - offset);
+	    return store.getData (node, offset, count);
+	}
+
+	public void setData (String data)
+	    { throw readonly (); }
+
+	public void appendData (String arg)
+	    { throw readonly (); }
+
+	public void insertData (int offset, String arg)
+	    { throw readonly (); }
+
+	public void deleteData (int offset, int count)
+	    { throw readonly (); }
+
+	public void replaceData (int offset, int count, String arg)
+	    { throw readonly (); }
+    }
+
+    static class TextView extends DataView implements Text
+    {
+	TextView (CompactStore store, int node)
+	    { super (store, node); }
+
+	public short getNodeType ()
+	    { return TEXT_NODE; }
+
+	public String getNodeName ()
+	    { return "#text"; }
+
+	public Text splitText (int offset)
+	    { throw readonly (); }
+    }
+
+    static final class CDataView extends TextView implements CDATASection
+    {
+	CDataView (CompactStore store, int node)
+	    { super (store, node); }
+
+	public short getNodeType ()
+	    { return CDATA_SECTION_NODE; }
+
+	public String getNodeName ()
+	    { return "#cdata-section"; }
+    }
+
+    static final class CommentView extends DataView implements Comment
+    {
+	CommentView (CompactStore store, int node)
+	    { super (store, node); }
+
+	public short getNodeType ()
+	    { return COMMENT_NODE; }
+
+	public String getNodeName ()
+	    { return "#comment"; }
+    }
+
+
+    /**
+     * Processing instructions; the target is a symbol.
+     */
+    static final class PIView extends CompactNode
+	implements ProcessingInstruction
+    {
+	PIView (CompactStore store, int node)
+	    { super (store, node); }
+
+	public short getNodeType ()
+	    { return PROCESSING_INSTRUCTION_NODE; }
+
+	public String getNodeName ()
+	    { return qName (); }
+
+	public String getTarget ()
+	    { return qName (); }
+
+	public String getNodeValue ()
+	    { return store.getData (node); }
+
+	public String getData ()
+	    { return store.getData (node); }
+
+	public void setData (String data)
+	    { throw readonly (); }
+    }
+}
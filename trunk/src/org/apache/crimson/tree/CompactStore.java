@@ -0,0 +1,483 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.tree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Hashtable;
+
+
+/**
+ * Holds the content of a read-only document in pages of memory outside
+ * the Java heap, rather than as one object per node.  Each node is a
+ * fixed size record of integers, in document order; names are numbered
+ * symbols; and all character data (text, attribute values, and so on)
+ * shares one run of pages, addressed by long offsets.  The garbage
+ * collector sees a handful of objects no matter how large the document
+ * is, and the heap needn't hold it at all.
+ *
+ * <P> Pages are direct buffers, unless the store is given a directory;
+ * then they're mapped from a temporary file there, so the document may
+ * be larger than memory and the operating system pages it in as it's
+ * read.  The file is deleted once the document is complete (or, where
+ * mapped files can't be deleted, when the JVM exits).
+ *
+ * <P> Nodes are identified by their record number; the document is
+ * record zero.  An element's attributes are the records immediately
+ * following it.  Since records are in document order, the records
+ * in an element's subtree are contiguous.
+ *
+ * @see CompactDocumentBuilder
+ * @version $Revision$
+ */
+final class CompactStore
+{
+    // fields of each record
+    static final int	TYPE = 0;
+    static final int	PARENT = 1;	// for attributes, the element
+    static final int	PREV = 2;	// siblings, or -1
+    static final int	NEXT = 3;
+    static final int	FIRST = 4;	// children, or -1
+    static final int	LAST = 5;
+    static final int	NAME = 6;	// symbol:  qName, or PI target
+    static final int	URI = 7;	// symbol, or -1
+    static final int	DATA = 8;	// offset of character data, low
+    static final int	DATA_HIGH = 9;	// ... and high 32 bits
+    static final int	LENGTH = 10;
+    static final int	FLAGS = 11;	// see below
+    static final int	STRIDE = 12;
+
+    // FLAGS for elements hold the attribute count; for attributes,
+    // these bits
+    static final int	SPECIFIED = 1;
+    static final int	ID = 2;
+
+    // log2 of records and chars per page.  Direct pages are small, so
+    // small documents stay small; mapped pages are large, since each is
+    // a mapping, and the file only takes space where it's written.
+    private final int	recordShift;
+    private final int	recordMask;
+    private final int	textShift;
+    private final int	textMask;
+
+    private IntBuffer	records [] = new IntBuffer [16];
+    private int		count;
+
+    private CharBuffer	text [] = new CharBuffer [16];
+    private long	textLength;
+
+    private String	symbols [] = new String [64];
+    private int		symbolCount;
+    private Hashtable	symbolIds = new Hashtable ();
+
+    // ID attribute values to element records; built once complete
+    private Hashtable	ids;
+
+    // while building, the file pages are mapped from, if any
+    private File	file;
+    private RandomAccessFile	data;
+    private long	mapped;
+
+    // true if names were reported with namespace information
+    boolean		namespaces;
+
+    // the document node
+    private CompactNode.DocumentView	document;
+
+
+    /**
+     * Constructs a store.  If a directory is given, pages are mapped
+     * from a temporary file there; else they're direct buffers.
+     */
+    CompactStore (File directory) throws IOException
+    {
+	if (directory != null) {
+	    file = File.createTempFile ("crimson", ".dom", directory);
+	    file.deleteOnExit ();
+	    data = new RandomAccessFile (file, "rw");
+	    recordShift = 18;		// 12 MB
+	    textShift = 24;		// 32 MB
+	} else {
+	    recordShift = 12;		// 192 KB
+	    textShift = 16;		// 128 KB
+	}
+	recordMask = (1 << recordShift) - 1;
+	textMask = (1 << textShift) - 1;
+	add (CompactNode.DOCUMENT_NODE, -1);
+    }
+
+    // Returns a new page of the given size.
+    private ByteBuffer allocate (int size) throws IOException
+    {
+	ByteBuffer	page;
+
+	if (data == null)
+	    page = ByteBuffer.allocateDirect (size);
+	else {
+	    page = data.getChannel ().map (FileChannel.MapMode.READ_WRITE,
+		    mapped, size);
+	    mapped += size;
+	}
+	return page.order (ByteOrder.nativeOrder ());
+    }
+
+    /** Returns the number of records. */
+    int getCount () { return count; }
+
+    /** Returns the given field of the given record. */
+    int get (int node, int field)
+    {
+	return records [node >>> recordShift]
+		.get ((node & recordMask) * STRIDE + field);
+    }
+
+    void set (int node, int field, int value)
+    {
+	records [node >>> recordShift]
+		.put ((node & recordMask) * STRIDE + field, value);
+    }
+
+    /**
+     * Adds a record of the given type.  Unless it's an attribute, it
+     * becomes the last child of the parent.
+     */
+    int add (int type, int parent) throws IOException
+    {
+	int	node = count;
+	int	page = node >>> recordShift;
+
+	if (page == records.length) {
+	    IntBuffer	temp [] = new IntBuffer [page * 2];
+
+	    System.arraycopy (records, 0, temp, 0, page);
+	    records = temp;
+	}
+	if (records [page] == null)
+	    records [page] = allocate (4 * STRIDE << recordShift)
+		    .asIntBuffer ();
+	count++;
+	set (node, TYPE, type);
+	set (node, PREV, -1);
+	set (node, NEXT, -1);
+	set (node, FIRST, -1);
+	set (node, LAST, -1);
+	set (node, NAME, -1);
+	set (node, URI, -1);
+	setOffset (node, 0);
+	set (node, LENGTH, 0);
+	set (node, FLAGS, 0);
+
+	set (node, PARENT, parent);
+	if (parent >= 0 && type != CompactNode.ATTRIBUTE_NODE) {
+	    int		last = get (parent, LAST);
+
+	    set (node, PREV, last);
+	    if (last < 0)
+		set (parent, FIRST, node);
+	    else
+		set (last, NEXT, node);
+	    set (parent, LAST, node);
+	}
+	return node;
+    }
+
+    private long getOffset (int node)
+    {
+	return ((long) get (node, DATA_HIGH) << 32)
+		| (get (node, DATA) & 0xffffffffL);
+    }
+
+    private void setOffset (int node, long offset)
+    {
+	set (node, DATA, (int) offset);
+	set (node, DATA_HIGH, (int) (offset >>> 32));
+    }
+
+    /** Sets the character data of a record. */
+    void setData (int node, String s) throws IOException
+    {
+	setOffset (node, textLength);
+	set (node, LENGTH, s.length ());
+	appendText (CharBuffer.wrap (s));
+    }
+
+    /**
+     * Appends to the character data of a record.  If it was the last
+     * data stored, the data is extended in place; else it's moved.
+     */
+    void appendData (int node, char buf [], int offset, int length)
+    throws IOException
+    {
+	int	old = get (node, LENGTH);
+
+	if (getOffset (node) + old != textLength || old == 0) {
+	    String	moved = getData (node);
+
+	    setOffset (node, textLength);
+	    appendText (CharBuffer.wrap (moved));
+	}
+	appendText (CharBuffer.wrap (buf, offset, length));
+	set (node, LENGTH, old + length);
+    }
+
+    // Copies characters to the end of the text, a page at a time.
+    private void appendText (CharBuffer chars) throws IOException
+    {
+	int	limit = chars.limit ();
+
+	while (chars.hasRemaining ()) {
+	    int		page = (int) (textLength >>> textShift);
+	    int		start = (int) (textLength & textMask);
+	    int		length;
+
+	    if (page == text.length) {
+		CharBuffer	temp [] = new CharBuffer [page * 2];
+
+		System.arraycopy (text, 0, temp, 0, page);
+		text = temp;
+	    }
+	    if (text [page] == null)
+		text [page] = allocate (2 << textShift).asCharBuffer ();
+
+	    length = Math.min (chars.remaining (), (textMask + 1) - start);
+	    chars.limit (chars.position () + length);
+	    text [page].position (start);
+	    text [page].put (chars);
+	    chars.limit (limit);
+	    textLength += length;
+	}
+    }
+
+    /** Returns the character data of a record as a string. */
+    String getData (int node)
+    {
+	return getData (node, 0, get (node, LENGTH));
+    }
+
+    /**
+     * Returns part of the character data of a record; the range must
+     * be within it.
+     */
+    String getData (int node, int offset, int length)
+    {
+	char		buf [] = new char [length];
+	long		start = getOffset (node) + offset;
+
+	for (int done = 0; done < length; ) {
+	    // a duplicate, so concurrent readers don't share a position
+	    CharBuffer	page = text [(int) (start >>> textShift)]
+				.duplicate ();
+	    int		i = (int) (start & textMask);
+	    int		n = Math.min (length - done, (textMask + 1) - i);
+
+	    page.position (i);
+	    page.get (buf, done, n);
+	    done += n;
+	    start += n;
+	}
+	return new String (buf);
+    }
+
+    /** Returns the number for a symbol, assigning one if needed. */
+    int symbol (String s)
+    {
+	if (s == null)
+	    return -1;
+
+	Integer	id = (Integer) symbolIds.get (s);
+
+	if (id != null)
+	    return id.intValue ();
+	if (symbolCount == symbols.length) {
+	    String	temp [] = new String [symbolCount * 2];
+
+	    System.arraycopy (symbols, 0, temp, 0, symbolCount);
+	    symbols = temp;
+	}
+	symbols [symbolCount] = s;
+	symbolIds.put (s, new Integer (symbolCount));
+	return symbolCount++;
+    }
+
+    /**
+     * Returns the number for a symbol, or -1 if it isn't used
+     * in this document.  Doesn't assign numbers.
+     */
+    int lookup (String s)
+    {
+	Integer	id = (s == null) ? null : (Integer) symbolIds.get (s);
+
+	return (id == null) ? -1 : id.intValue ();
+    }
+
+    /** Returns the string for a symbol number, or null. */
+    String symbol (int id)
+    {
+	return (id < 0) ? null : symbols [id];
+    }
+
+    /**
+     * Returns the record following the subtree rooted at the given
+     * node; that subtree is all the records in between.
+     */
+    int subtreeEnd (int node)
+    {
+	while (node >= 0) {
+	    int		next = get (node, NEXT);
+
+	    if (next >= 0)
+		return next;
+	    node = get (node, PARENT);
+	}
+	return count;
+    }
+
+    /**
+     * Returns the element with an attribute of type ID which has the
+     * given value, or -1.  If several do, the first is returned.
+     */
+    int getElementById (String id)
+    {
+	Integer	element = (ids == null) ? null : (Integer) ids.get (id);
+
+	return (element == null) ? -1 : element.intValue ();
+    }
+
+    /**
+     * Builds the table used by <em>getElementById</em>, once the
+     * document is complete.
+     */
+    void buildIdTable ()
+    {
+	Hashtable	table = new Hashtable ();
+
+	for (int n = 1; n < count; n++) {
+	    if (get (n, TYPE) == CompactNode.ATTRIBUTE_NODE
+		    && (get (n, FLAGS) & ID) != 0) {
+		String	value = getData (n);
+
+		if (!table.containsKey (value))
+		    table.put (value, new Integer (get (n, PARENT)));
+	    }
+	}
+	ids = table;
+    }
+
+    /**
+     * Called once the document is complete, or its parse has failed.
+     * Closes and deletes any file the pages are mapped from; the
+     * mappings stay valid.
+     */
+    void finish () throws IOException
+    {
+	String		names [] = new String [symbolCount];
+
+	System.arraycopy (symbols, 0, names, 0, symbolCount);
+	symbols = names;
+	if (data != null) {
+	    data.close ();
+	    data = null;
+	    file.delete ();
+	    file = null;
+	}
+    }
+
+    /** Returns the document node. */
+    CompactNode.DocumentView getDocument ()
+    {
+	if (document == null)
+	    document = new CompactNode.DocumentView (this);
+	return document;
+    }
+
+    /**
+     * Returns a node object for the given record, or null if it's
+     * negative.  A new object is returned each time, except for the
+     * document node.
+     */
+    CompactNode node (int node)
+    {
+	if (node < 0)
+	    return null;
+	switch (get (node, TYPE)) {
+	  case CompactNode.DOCUMENT_NODE:
+	    return getDocument ();
+	  case CompactNode.ELEMENT_NODE:
+	    return new CompactNode.ElementView (this, node);
+	  case CompactNode.ATTRIBUTE_NODE:
+	    return new CompactNode.AttrView (this, node);
+	  case CompactNode.TEXT_NODE:
+	    return new CompactNode.TextView (this, node);
+	  case CompactNode.CDATA_SECTION_NODE:
+	    return new CompactNode.CDataView (this, node);
+	  case CompactNode.COMMENT_NODE:
+	    return new CompactNode.CommentView (this, node);
+	  case CompactNode.PROCESSING_INSTRUCTION_NODE:
+	    return new CompactNode.PIView (this, node);
+	  default:
+	    throw new InternalError ();
+	}
+    }
+}
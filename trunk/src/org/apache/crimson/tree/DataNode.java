@@ -247,7 +247,11 @@ abstract class DataNode extends NodeBase implements CharacterData
 	    deleteData (offset, count);
 	    appendData (arg);
 	} else if (arg.length () == count) {
-	    arg.getChars (0, (arg.length ()), data, offset);
+	    // never write in place:  buffers may be shared by copies
+	    char tmp [] = new char [data.length];
+	    System.arraycopy (data, 0, tmp, 0, data.length);
+	    arg.getChars (0, count, tmp, offset);
+	    data = tmp;
 	} else {
 	    char tmp [] = new char [data.length + (arg.length () - count)];
 	    System.arraycopy (data, 0, tmp, 0, offset);
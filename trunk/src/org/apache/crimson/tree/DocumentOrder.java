@@ -0,0 +1,145 @@
+/*
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.tree;
+
+
+/**
+ * The document order of one version of a document's tree, as used by
+ * <em>XmlDocument.compareOrder</em>.  Nodes are numbered in preorder,
+ * and the number of descendants of each is recorded, so that both
+ * order and ancestry are simple comparisons.  Nodes don't hold their
+ * own numbers; an identity hash table maps them here, so documents
+ * which never compare nodes pay nothing for this.
+ *
+ * <P> Once built, a table is never changed, so any number of threads
+ * may read it.
+ *
+ * @version $Revision$
+ */
+final class DocumentOrder
+{
+    // open addressing, keyed on node identity; index i holds the
+    // node numbered indexes [i]
+    private NodeBase		keys [];
+    private int			indexes [];
+    private int			mask;
+
+    // subtree sizes, by preorder number
+    private int			sizes [];
+    private int			count;
+
+
+    // package private
+    // Numbers every node in the tree under the given root
+    DocumentOrder (ParentNode root)
+    {
+	int		capacity = 16;
+	int		nodes = root.countNodes ();
+
+	while (capacity < 2 * nodes)
+	    capacity <<= 1;
+	keys = new NodeBase [capacity];
+	indexes = new int [capacity];
+	mask = capacity - 1;
+	sizes = new int [nodes];
+
+	root.numberNodes (this);
+    }
+
+    // package private
+    // Assigns the next number to this node, with no descendants yet
+    int add (NodeBase node)
+    {
+	int		i = slot (node);
+
+	keys [i] = node;
+	indexes [i] = count;
+	return count++;
+    }
+
+    // package private
+    // Records the descendants of a node numbered by add()
+    void setDescendants (int index)
+	{ sizes [index] = count - index - 1; }
+
+    // package private
+    // Returns the number of a node, or -1 if it isn't in this tree
+    int indexOf (NodeBase node)
+    {
+	int		i = slot (node);
+
+	return (keys [i] == null) ? -1 : indexes [i];
+    }
+
+    // package private
+    // Returns the number of descendants of the node with this number
+    int descendants (int index)
+	{ return sizes [index]; }
+
+    // Returns the slot holding the node, or the empty one where it goes
+    private int slot (NodeBase node)
+    {
+	int		h = System.identityHashCode (node);
+	int		i = (h ^ (h >>> 16)) & mask;
+
+	while (keys [i] != null && keys [i] != node)
+	    i = (i + 1) & mask;
+	return i;
+    }
+}
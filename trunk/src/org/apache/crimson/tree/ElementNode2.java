@@ -63,6 +63,7 @@ import java.io.IOException;
 import java.io.Writer;
 
 import java.util.Enumeration;
+import java.util.Hashtable;
 
 import org.apache.crimson.util.XmlNames;
 
@@ -109,6 +110,7 @@ public class ElementNode2 extends NamespacedNode implements ElementEx
     protected AttributeSet	attributes;
     private String		idAttributeName;
     private Object		userObject;
+    private Scope		scope;		// cached; see getScope()
 
     private static final char	tagStart [] = { '<', '/' };
     private static final char	tagEnd [] = { ' ', '/', '>' };
@@ -150,25 +152,221 @@ public class ElementNode2 extends NamespacedNode implements ElementEx
         retval.userObject = userObject;
 
         if (deep) {
-            // Copy ownerDocument to prevent appendChild() from throwing
-            // WRONG_DOCUMENT_ERR for deep copies.  This gets changed to
-            // the correct ownerDocument later in Document.importNode().
+            // Copy ownerDocument; this gets changed to the correct
+            // ownerDocument later in Document.importNode().
             retval.ownerDocument = ownerDocument;
+            retval.copyChildren(this, ownerDocument, true);
+        }
+        return retval;
+    }
+
+    /**
+     * Copies this element, and its subtree if <em>deep</em> is true,
+     * so that the copy and everything in it belong to <em>owner</em>.
+     * If <em>importing</em> is true, defaulted attributes are not
+     * copied.
+     *
+     * Used to implement cloneNode() and Document.importNode() without
+     * per-node checks or a second pass to change ownership.
+     */
+    ElementNode2 copyElement(XmlDocument owner, boolean importing,
+                             boolean deep) {
+        ElementNode2 retval = importing ? createCopyForImportNode(false)
+                                        : makeClone();
+
+        retval.ownerDocument = owner;
+        if (retval.attributes != null && owner != ownerDocument) {
+            retval.attributes.changeOwnerDeep(owner);
+        }
+        if (deep) {
+            retval.copyChildren(this, owner, importing);
+        }
+        return retval;
+    }
+
+    // package private -- overrides base class method
+    void compact(Hashtable ids) {
+        // getAttributes() would otherwise allocate these on demand
+        if (attributes == null) {
+            attributes = new AttributeSet(this);
+            attributes.setReadonly();
+        }
+        attributes.compact();
+
+        // freeze() compacts parents before children, so the scope
+        // around this element is already built; none of these change
+        // again, so later reads never replace them
+        ElementNode2 parent = getParentElement();
+        Scope outer = (parent != null) ? parent.scope : null;
+        if (outer == null || !outer.frozen) {
+            outer = new Scope(ownerDocument, null, null, null, true);
+        }
+        scope = declareScope(outer, true);
+
+        // as in getElementExById(), the first such element wins
+        if (idAttributeName != null && ids != null) {
+            String value = getAttribute(idAttributeName);
+            if (ids.get(value) == null) {
+                ids.put(value, this);
+            }
+        }
+        super.compact(ids);
+    }
 
-            for (int i = 0; true; i++) {
-                Node node = item(i);
-                if (node == null) {
-                    break;
+    // package private -- overrides base class method
+    void changeOwnerDeep(XmlDocument doc) {
+        super.changeOwnerDeep(doc);
+        if (attributes != null) {
+            attributes.changeOwnerDeep(doc);
+        }
+    }
+
+    /*
+     * The inherited attributes in scope at an element:  those whose
+     * names start with "xml", such as xml:lang, xml:space, and the
+     * xmlns namespace declarations.  An element declaring none of them
+     * shares its parent's scope.  Scopes are never modified; one is
+     * only used while its document's mutation count is unchanged,
+     * unless it was built when the document was frozen.  Those are
+     * built by compact(), so readers of a frozen document share them
+     * and never write any.
+     */
+    static final class Scope {
+        final XmlDocument       doc;
+        final int               stamp;
+        final Scope             parent;
+        final String            names [];       // declared here
+        final String            values [];
+        final String            lang;           // resolved
+        final String            space;
+        final boolean           frozen;         // valid forever
+
+        Scope(XmlDocument doc, Scope parent, String names[],
+              String values[], boolean frozen)
+        {
+            this.doc = doc;
+            this.stamp = doc.mutationCount;
+            this.frozen = frozen;
+            this.parent = parent;
+            this.names = names;
+            this.values = values;
+            this.lang = lookup("xml:lang");
+            this.space = lookup("xml:space");
+        }
+
+        /** Returns the value in scope for the attribute, or null */
+        String lookup(String name) {
+            for (Scope s = this; s != null; s = s.parent) {
+                if (s.names == null) {
+                    continue;
                 }
-                if (node instanceof ElementNode2) {
-                    retval.appendChild(
-                        ((ElementNode2) node).createCopyForImportNode(true));
-                } else {
-                    retval.appendChild(node.cloneNode(true));
+                for (int i = 0; i < s.names.length; i++) {
+                    if (s.names[i].equals(name)) {
+                        return s.values[i];
+                    }
                 }
             }
+            return null;
+        }
+    }
+
+    /*
+     * Returns the inherited scope at this element, or null if it has no
+     * owner document.  Stale scopes are recomputed from the top down,
+     * reusing the nearest current one above, so no recursion is needed.
+     */
+    // package private
+    Scope getScope() {
+        XmlDocument doc = ownerDocument;
+
+        if (doc == null) {
+            return null;
+        }
+
+        ElementNode2    stale [] = null;
+        int             count = 0;
+        Scope           s = null;
+
+        for (ElementNode2 e = this; e != null; e = e.getParentElement()) {
+            s = e.scope;
+            if (s != null && s.doc == doc
+                    && (s.frozen || s.stamp == doc.mutationCount)) {
+                break;
+            }
+            s = null;
+            if (stale == null) {
+                stale = new ElementNode2[8];
+            } else if (count == stale.length) {
+                ElementNode2 temp [] = new ElementNode2[count * 2];
+                System.arraycopy(stale, 0, temp, 0, count);
+                stale = temp;
+            }
+            stale[count++] = e;
+        }
+        if (s == null) {
+            s = new Scope(doc, null, null, null, false);
+        }
+        while (count > 0) {
+            ElementNode2 e = stale[--count];
+            s = e.declareScope(s, false);
+            e.scope = s;
+        }
+        return s;
+    }
+
+    // The nearest ancestor element, if any
+    private ElementNode2 getParentElement() {
+        for (NodeBase p = getParentImpl(); p != null; p = p.getParentImpl()) {
+            if (p instanceof ElementNode2) {
+                return (ElementNode2) p;
+            }
+        }
+        return null;
+    }
+
+    // The scope inside this element, given the one around it
+    private Scope declareScope(Scope outer, boolean frozen) {
+        int             n = 0;
+        int             len;
+
+        len = (attributes == null) ? 0 : attributes.getLength();
+        for (int i = 0; i < len; i++) {
+            if (attributes.qNameAt(i).startsWith("xml")) {
+                n++;
+            }
+        }
+        if (n == 0) {
+            return outer;
+        }
+
+        String  names [] = new String[n];
+        String  values [] = new String[n];
+
+        n = 0;
+        for (int i = 0; i < len; i++) {
+            String name = attributes.qNameAt(i);
+            if (name.startsWith("xml")) {
+                names[n] = name;
+                values[n++] = attributes.valueAt(i);
+            }
+        }
+        return new Scope(ownerDocument, outer, names, values, frozen);
+    }
+
+    /*
+     * Changing an inherited attribute counts as a mutation of its
+     * document, so that cached scopes get recomputed.  Other attribute
+     * changes don't, since that would also reset the document's
+     * node lists.
+     */
+    // package private
+    static void inheritedAttributeChanged(Element element, String qName) {
+        if (qName.startsWith("xml") && element instanceof NodeBase) {
+            XmlDocument doc = ((NodeBase) element).ownerDocument;
+            if (doc != null) {
+                doc.mutationCount++;
+            }
         }
-        return retval;
     }
 
     static void checkArguments(String namespaceURI, String qualifiedName)
@@ -280,7 +478,7 @@ public class ElementNode2 extends NamespacedNode implements ElementEx
      * @since DOM Level 2
      */
     public boolean hasAttributes() {
-        return attributes != null;
+        return attributes != null && attributes.getLength() != 0;
     }
 
     /**
@@ -406,11 +604,7 @@ public class ElementNode2 extends NamespacedNode implements ElementEx
 	if (attributes == null) {
 	    return "";
         }
-	Attr attr = getAttributeNodeNS(namespaceURI, localName);
-	if (attr == null) {
-	    return "";
-        }
-	return attr.getValue();
+	return attributes.getValueNS(namespaceURI, localName);
     }
 
     /**
@@ -424,17 +618,7 @@ public class ElementNode2 extends NamespacedNode implements ElementEx
 	if (attributes == null) {
             return null;
         }
-        for (int i = 0; ; i++) {
-            AttributeNode attr = (AttributeNode) attributes.item(i);
-            if (attr == null) {
-                return null;
-            }
-            if (localName.equals(attr.getLocalName())
-                && (attr.getNamespaceURI() == namespaceURI
-                    || attr.getNamespaceURI().equals(namespaceURI))) {
-                return attr;
-            }
-        }
+        return (Attr) attributes.getNamedItemNS(namespaceURI, localName);
     }
     
     /**
@@ -594,16 +778,7 @@ public class ElementNode2 extends NamespacedNode implements ElementEx
     public Node cloneNode (boolean deep)
     {
 	try {
-	    ElementNode2 retval = makeClone();
-	    if (deep) {
-		for (int i = 0; true; i++) {
-		    Node	node = item (i);
-		    if (node == null)
-			break;
-		    retval.appendChild (node.cloneNode (true));
-		}
-	    }
-	    return retval;
+	    return copyElement (ownerDocument, false, deep);
 	} catch (DOMException e) {
 	    throw new RuntimeException (getMessage ("EN-001"));
 	}
@@ -82,7 +82,9 @@ abstract class NodeBase
     implements Node, NodeEx, NodeList, XmlWritable
 {
     private ParentNode	parent;
-    private int		parentIndex = -1;	// cache
+
+    // package private; a cache, except in frozen documents
+    int			parentIndex = -1;
 
     // package private for speed ...
     XmlDocument		ownerDocument;
@@ -95,6 +97,15 @@ abstract class NodeBase
     // package private 
     NodeBase () { }
         
+    // package private
+    // Returns how many nodes are in this subtree
+    int countNodes () { return 1; }
+
+    // package private
+    // Numbers this subtree in preorder, for XmlDocument.compareOrder()
+    void numberNodes (DocumentOrder order)
+	{ order.add (this); }
+
     /* Returns the node's parent; typesafe convenience rtn. */
     // package private ... 
     ParentNode getParentImpl () { return parent; }
@@ -133,6 +144,10 @@ abstract class NodeBase
      * mechanism can also be involved with Cascading Style Sheets (CSS).
      * The current version of XML Namespaces also uses inheritance.
      *
+     * <P> Names starting with <em>xml</em>, including namespace
+     * declarations, are looked up in a scope cached by each element
+     * until the document is next changed, so repeated calls are cheap.
+     *
      * @param name identifies the attribute; colons may be included,
      *	but namespace prefixes are not interpreted
      * @return the value of the inherited attribute, or null if
@@ -143,6 +158,24 @@ abstract class NodeBase
 	NodeBase	current = this;
 	Attr		value = null;
 
+	// the standard inherited attributes are cached per element
+	if (name.startsWith ("xml")) {
+	    while (current != null && !(current instanceof ElementNode2))
+		current = current.getParentImpl ();
+	    if (current == null)
+		return null;
+
+	    ElementNode2.Scope	scope = ((ElementNode2) current).getScope ();
+
+	    if (scope != null) {
+		if (name.equals ("xml:lang"))
+		    return scope.lang;
+		if (name.equals ("xml:space"))
+		    return scope.space;
+		return scope.lookup (name);
+	    }
+	}
+
 	do {
 	    if (current instanceof ElementNode2) {
 		ElementNode2 e = (ElementNode2) current;
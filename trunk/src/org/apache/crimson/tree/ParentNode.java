@@ -61,6 +61,7 @@ package org.apache.crimson.tree;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Hashtable;
 
 import org.xml.sax.SAXException;
 
@@ -501,6 +502,133 @@ abstract class ParentNode extends NodeBase
     }
 
 
+    // package private
+    // Detaches all children at once, except "keep" if it's one of them
+    // (it may be null); used to release content which has already been
+    // handed off while streaming.
+    void removeChildren (Node keep)
+    throws DOMException
+    {
+	int		kept = 0;
+
+	if (readonly)
+	    throw new DomEx (DomEx.NO_MODIFICATION_ALLOWED_ERR);
+	for (int i = 0; i < length; i++) {
+	    NodeBase	child = children [i];
+
+	    children [i] = null;
+	    if (child == keep) {
+		children [kept] = child;
+		child.parentIndex = kept++;
+	    } else
+		child.setParentNode (null, -1);
+	}
+	length = kept;
+	mutated ();
+    }
+
+
+    // package private
+    // Deep copies the children of "source" into this node, which has
+    // none yet.  The array is allocated at its final size and copies
+    // are attached directly, skipping the per-child checks appendChild
+    // makes; they can't fail here.  Copies belong to "owner", and
+    // elements are copied as for importNode() if "importing" is set.
+    void copyChildren (ParentNode source, XmlDocument owner, boolean importing)
+    {
+	int		n = source.length;
+	boolean		share = owner != null && owner.isSharingText ();
+
+	if (n == 0)
+	    return;
+	children = new NodeBase [n];
+	for (int i = 0; i < n; i++) {
+	    NodeBase	child = source.children [i];
+	    NodeBase	copy;
+
+	    if (child instanceof ElementNode2) {
+		copy = ((ElementNode2) child).copyElement (owner,
+			importing, true);
+
+	    // DOM never writes into these buffers, it replaces them
+	    } else if (share && child.getClass () == TextNode.class) {
+		copy = new TextNode ();
+		((TextNode) copy).data = ((TextNode) child).data;
+		copy.setOwnerDocument (owner);
+	    } else if (share && child.getClass () == CDataNode.class) {
+		copy = new CDataNode ();
+		((CDataNode) copy).data = ((CDataNode) child).data;
+		copy.setOwnerDocument (owner);
+
+	    } else {
+		copy = (NodeBase) child.cloneNode (true);
+		if (copy.getOwnerDocument () != owner) {
+		    if (copy instanceof ParentNode)
+			((ParentNode) copy).changeOwnerDeep (owner);
+		    else
+			copy.setOwnerDocument (owner);
+		}
+	    }
+	    copy.setParentNode (this, i);
+	    children [i] = copy;
+	}
+	length = n;
+    }
+
+    // package private
+    // Used when freezing a document:  trims the children array and
+    // records each child's index, so later reads needn't update any
+    // cached state.  Subclasses also prepare their associated nodes,
+    // and add elements with IDs to the table.
+    void compact (Hashtable ids)
+    {
+	trimToSize ();
+	for (int i = 0; i < length; i++) {
+	    NodeBase	child = children [i];
+
+	    child.parentIndex = i;
+	    if (child instanceof ParentNode)
+		((ParentNode) child).compact (ids);
+	}
+    }
+
+    // package private -- overrides base class method
+    int countNodes ()
+    {
+	int	count = 1;
+
+	for (int i = 0; i < length; i++)
+	    count += children [i].countNodes ();
+	return count;
+    }
+
+    // package private -- overrides base class method
+    void numberNodes (DocumentOrder order)
+    {
+	int	index = order.add (this);
+
+	for (int i = 0; i < length; i++)
+	    children [i].numberNodes (order);
+	order.setDescendants (index);
+    }
+
+    // package private
+    // Assigns the owner of this node and everything below it in one
+    // walk; subclasses add any associated nodes, such as attributes.
+    void changeOwnerDeep (XmlDocument doc)
+    {
+	setOwnerDocument (doc);
+	for (int i = 0; i < length; i++) {
+	    NodeBase	child = children [i];
+
+	    if (child instanceof ParentNode)
+		((ParentNode) child).changeOwnerDeep (doc);
+	    else
+		child.setOwnerDocument (doc);
+	}
+    }
+
+
     /**
      * <b>DOM:</b>  Returns a "live" list view of the elements below this
      * one which have the specified tag name.  Because this is "live", this
@@ -691,6 +819,9 @@ abstract class ParentNode extends NodeBase
      * element.  Avoid using this on large blocks of text not separated
      * by markup such as elements or processing instructions, since it
      * can require arbitrarily large blocks of contiguous memory.
+     * Each run of text is copied once, so the cost is linear in the
+     * size of the subtree; invoked on an <em>XmlDocument</em>, this
+     * normalizes the whole document.
      *
      * XXX The following extension breaks a DOM conformance test so the
      * code has been modified to not behave as described:
@@ -703,27 +834,56 @@ abstract class ParentNode extends NodeBase
     public void normalize() {
 	boolean	preserve = false;
 	boolean	knowPreserve = false;
+	boolean	merged = false;
+	int	kept = 0;
 
 	if (readonly) {
 	    throw new DomEx (DomEx.NO_MODIFICATION_ALLOWED_ERR);
         }
 
-	for (int i = 0; true; i++) {
-            Node node = item(i);
-	    if (node == null) {
-		break;
-            }
+        // Each run of adjacent text is merged into its first node using
+        // one buffer, and surviving children are compacted in place, so
+        // this is linear in the size of the subtree.
+	for (int i = 0; i < length; ) {
+            NodeBase node = children[i];
+
 	    switch (node.getNodeType()) {
             case ELEMENT_NODE:
 		((Element)node).normalize ();
+                children[kept++] = node;
+                i++;
 		continue;
                 // case CDATA_SECTION_NODE:
             case TEXT_NODE: {
-                Node node2 = item(i + 1);
-                if (node2 == null || node2.getNodeType() != TEXT_NODE) {
-                    if (false) {
-                        // The following code breaks DOM conformance so this
-                        // feature is turned off.
+                int end = i + 1;
+                int size = ((TextNode)node).data.length;
+
+                while (end < length
+                       && children[end].getNodeType() == TEXT_NODE) {
+                    size += ((TextNode)children[end]).data.length;
+                    end++;
+                }
+                if (end - i > 1) {
+                    char[] buf = new char[size];
+                    int offset = 0;
+
+                    for (int j = i; j < end; j++) {
+                        char[] text = ((TextNode)children[j]).data;
+
+                        System.arraycopy(text, 0, buf, offset, text.length);
+                        offset += text.length;
+                        if (j != i) {
+                            children[j].setParentNode(null, -1);
+                        }
+                    }
+                    ((TextNode)node).data = buf;
+                    merged = true;
+                }
+                i = end;
+
+                if (false) {
+                    // The following code breaks DOM conformance so this
+                    // feature is turned off.
 
                     // See if xml:space='preserve' is set...
                     if (!knowPreserve) {
@@ -738,8 +898,8 @@ abstract class ParentNode extends NodeBase
 
                         // XXX this isn't supposed to happen
                         if (buf == null || buf.length == 0) {
-                            removeChild(node);
-                            i--;
+                            node.setParentNode(null, -1);
+                            merged = true;
                             continue;
                         }
 
@@ -752,17 +912,24 @@ abstract class ParentNode extends NodeBase
                             ((TextNode)node).data = tmp;
                         }
                     }
-                    }
-                    continue;
                 }
-                ((TextNode) node).joinNextText();
-                i--;
+                children[kept++] = node;
                 continue;
             }
             default:
+                children[kept++] = node;
+                i++;
 		continue;
 	    }
 	}
+
+        if (merged) {
+            for (int i = kept; i < length; i++) {
+                children[i] = null;
+            }
+            length = kept;
+            mutated();
+        }
     }
 
     /*
@@ -149,9 +149,15 @@ public class XmlDocument extends ParentNode implements DocumentEx
 
     private String              systemId;
     private ElementFactory      factory;
+    private boolean             sharingText;
+    private Hashtable           ids;            // non-null once frozen
 
     // package private
     int                         mutationCount;
+
+    // document order, built when first needed; see compareOrder()
+    private DocumentOrder       order;
+    private int                 orderStamp;     // mutationCount when built
     boolean replaceRootElement;
 
     /**
@@ -815,6 +821,30 @@ public class XmlDocument extends ParentNode implements DocumentEx
 	return factory;
     }
 
+    /**
+     * Controls whether text and CDATA nodes copied into this document,
+     * by <em>cloneNode</em> or <em>importNode</em>, share character
+     * buffers with the nodes they were copied from.  DOM methods never
+     * modify a buffer in place, so sharing is safe unless the arrays
+     * returned by <em>TextNode.getText</em> are modified directly.
+     * This is off by default.
+     *
+     * @param value true to share text buffers when copying
+     */
+    public void setSharingText (boolean value)
+    {
+	sharingText = value;
+    }
+
+    /**
+     * Returns true if copies of text made into this document share
+     * character buffers with their originals.
+     */
+    public boolean isSharingText ()
+    {
+	return sharingText;
+    }
+
 
     /**
      * DOM:  Create a new element, associated with this document, with
@@ -1124,7 +1154,6 @@ public class XmlDocument extends ParentNode implements DocumentEx
     final public void changeNodeOwner (Node node)
     throws DOMException
     {
-        TreeWalker      walker;
         NodeBase        n;
 
         if (node.getOwnerDocument () == this)
@@ -1162,22 +1191,12 @@ public class XmlDocument extends ParentNode implements DocumentEx
         if (n != null)
             n.removeChild (node);
         
-        // change any children (including self)
-        for (walker = new TreeWalker (node),
-                    n = (NodeBase) walker.getCurrent ();
-                n != null;
-                n = (NodeBase) walker.getNext ()) {
-            n.setOwnerDocument (this);
-
-            // Elements have associated attributes, which must
-            // also have owners changed.
-            if (n instanceof Element) {
-                NamedNodeMap    list = n.getAttributes ();
-                int             length = list.getLength ();
-                for (int i = 0; i < length; i++)
-                    changeNodeOwner (list.item (i));
-            }
-        }
+        // change any children (including self), and the attributes
+        // of any elements
+        if (node instanceof ParentNode)
+            ((ParentNode) node).changeOwnerDeep (this);
+        else
+            ((NodeBase) node).setOwnerDocument (this);
     }
 
     /**
@@ -1190,6 +1209,158 @@ public class XmlDocument extends ParentNode implements DocumentEx
         return getElementExById(elementId);
     }
 
+    /**
+     * Makes this document permanently read-only, so that any number of
+     * threads may read it at once without synchronization.  Every node
+     * is marked read-only, as with <em>setReadonly(true)</em>; child
+     * lists are trimmed and each node's position in its parent is
+     * recorded; attribute lists are allocated; inherited attributes
+     * such as <em>xml:lang</em> are resolved; elements are indexed
+     * by ID; and nodes are numbered for <em>compareOrder</em>.
+     * Afterwards, DOM read operations don't modify the tree.
+     *
+     * <P> Freeze the document before handing it to other threads, using
+     * some mechanism which makes this thread's writes visible to them
+     * (such as a synchronized block, or starting those threads).  Each
+     * thread should use its own <em>NodeList</em> objects from
+     * <em>getElementsByTagName</em>, since they track their position.
+     */
+    public void freeze ()
+    {
+        Hashtable       table;
+
+        if (ids != null)
+            return;
+        table = new Hashtable ();
+        setReadonly (true);
+        compact (table);
+        numberDocument ();
+        ids = table;
+    }
+
+    /**
+     * Returns true if <em>freeze</em> has been called on this document.
+     */
+    public boolean isFrozen ()
+    {
+        return ids != null;
+    }
+
+    /**
+     * Compares the positions of two nodes in document order, as used to
+     * sort and merge node sets.  The first call after the document has
+     * changed numbers all of its nodes in one walk, in a table kept
+     * by the document rather than in the nodes; after that, each
+     * comparison takes constant time.  An attribute comes after its
+     * element and before that element's children, as in XPath; the
+     * attributes of one element are ordered as in its attribute list.
+     *
+     * @param a a node in this document
+     * @param b another node in this document
+     * @return a negative number if <em>a</em> comes first, a positive
+     *	number if <em>b</em> does, or zero if they are the same node
+     * @exception DOMException WRONG_DOCUMENT_ERR if either node isn't
+     *	part of this document's tree
+     */
+    public int compareOrder (Node a, Node b)
+    {
+        DocumentOrder   order = numberDocument ();
+        NodeBase        aNode = orderedNode (a);
+        NodeBase        bNode = orderedNode (b);
+
+        if (aNode != bNode) {
+            return (indexOf (order, aNode) < indexOf (order, bNode))
+                ? -1 : 1;
+        }
+        indexOf (order, aNode);         // only checks it's in this tree
+        if (a == b) {
+            return 0;
+        }
+
+        // attributes of one element, or an element and its attribute
+        if (a == aNode) {
+            return -1;
+        }
+        if (b == bNode) {
+            return 1;
+        }
+
+        AttributeSet    attributes = ((ElementNode2) aNode).attributes;
+
+        return attributes.indexOfNode (a) - attributes.indexOfNode (b);
+    }
+
+    /**
+     * Returns true if the first node is an ancestor of the second one,
+     * in constant time once the document has been numbered as for
+     * <em>compareOrder</em>.  An element is considered an ancestor of
+     * its attributes, as in XPath, and no node is its own ancestor.
+     *
+     * @exception DOMException WRONG_DOCUMENT_ERR if either node isn't
+     *	part of this document's tree
+     */
+    public boolean isAncestor (Node ancestor, Node node)
+    {
+        DocumentOrder   order = numberDocument ();
+        NodeBase        aNode = orderedNode (ancestor);
+        NodeBase        dNode = orderedNode (node);
+        int             aIndex = indexOf (order, aNode);
+        int             delta = indexOf (order, dNode) - aIndex;
+
+        if (ancestor != aNode) {
+            return false;               // attributes have no descendants
+        }
+        if (delta == 0) {
+            return node != dNode;
+        }
+        return delta > 0 && delta <= order.descendants (aIndex);
+    }
+
+    // Returns the numbered node giving this one's position:  itself,
+    // or for an attribute, its element
+    private static NodeBase orderedNode (Node node)
+    {
+        if (node instanceof Attr) {
+            node = ((Attr) node).getOwnerElement ();
+        }
+        if (!(node instanceof NodeBase)) {
+            throw new DomEx (DomEx.WRONG_DOCUMENT_ERR);
+        }
+        return (NodeBase) node;
+    }
+
+    // Returns the node's number, if it's in this document's tree
+    private static int indexOf (DocumentOrder order, NodeBase node)
+    {
+        int             index = order.indexOf (node);
+
+        if (index < 0) {
+            throw new DomEx (DomEx.WRONG_DOCUMENT_ERR);
+        }
+        return index;
+    }
+
+    // Returns the order of the current tree, numbering it if needed;
+    // frozen documents are numbered by freeze(), so readers only read
+    private DocumentOrder numberDocument ()
+    {
+        DocumentOrder   current = order;
+
+        if (current == null || orderStamp != mutationCount) {
+            current = renumber ();
+        }
+        return current;
+    }
+
+    private synchronized DocumentOrder renumber ()
+    {
+        if (order == null || orderStamp != mutationCount) {
+            order = new DocumentOrder (this);
+            orderStamp = mutationCount;
+        }
+        return order;
+    }
+
     /**
      * Returns the element whose ID is given by the parameter; or null
      * if no such element exists.  This relies on elements to know the 
@@ -1215,6 +1386,8 @@ public class XmlDocument extends ParentNode implements DocumentEx
     {
         if (id == null)
             throw new IllegalArgumentException (getMessage ("XD-000"));
+        if (ids != null)
+            return (ElementEx) ids.get (id);
 
         TreeWalker      w = new TreeWalker (this);
         ElementEx       element;
@@ -1258,8 +1431,9 @@ public class XmlDocument extends ParentNode implements DocumentEx
         case DOCUMENT_TYPE_NODE:
             throw new DomEx(DomEx.NOT_SUPPORTED_ERR);
         case ELEMENT_NODE:
-            node = ((ElementNode2) importedNode).createCopyForImportNode(deep);
-            break;
+            // Copied directly into this document
+            return ((ElementNode2) importedNode).copyElement(this, true,
+                                                             deep);
         case ENTITY_NODE:
             node = importedNode.cloneNode(deep);
             break;
@@ -1277,22 +1451,10 @@ public class XmlDocument extends ParentNode implements DocumentEx
         }
 
         // Change the ownerDocument of subtree root and any children
-        TreeWalker walker;
-        NodeBase n;
-        for (walker = new TreeWalker (node),
-                    n = (NodeBase) walker.getCurrent ();
-                n != null;
-                n = (NodeBase) walker.getNext ()) {
-            n.setOwnerDocument (this);
-
-            // Elements have associated attributes, which must
-            // also have owners changed.
-            if (n instanceof Element) {
-                NamedNodeMap    list = n.getAttributes ();
-                int             length = list.getLength ();
-                for (int i = 0; i < length; i++)
-                    changeNodeOwner (list.item (i));
-            }
+        if (node instanceof ParentNode) {
+            ((ParentNode) node).changeOwnerDeep(this);
+        } else {
+            ((NodeBase) node).setOwnerDocument(this);
         }
 
         return node;
@@ -1344,17 +1506,11 @@ public class XmlDocument extends ParentNode implements DocumentEx
         public Node cloneNode (boolean deep)
         {
             DocFragNode retval = new DocFragNode ();
-            ((NodeBase)retval).setOwnerDocument 
-                                ((XmlDocument)this.getOwnerDocument ());
-
-            if (deep) {
-                Node    node;
+            XmlDocument owner = (XmlDocument) this.getOwnerDocument ();
 
-                for (int i = 0; (node = item (i)) != null; i++) {
-                    node = node.cloneNode (true);
-                    retval.appendChild (node);
-                }
-            }
+            ((NodeBase)retval).setOwnerDocument (owner);
+            if (deep)
+                retval.copyChildren (this, owner, false);
             return retval;
         }
     }
@@ -0,0 +1,504 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.tree;
+
+import org.w3c.dom.Node;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+import org.apache.crimson.parser.AttributesEx;
+
+
+/**
+ * This class walks an <em>XmlDocument</em>, or any part of one, and
+ * reports its contents as SAX2 events, as if the text it would write
+ * were being parsed.  It's used to feed documents to SAX consumers,
+ * such as another <em>XmlDocumentBuilder</em>, without writing and
+ * reparsing them.
+ *
+ * <P> Character data is reported straight from the nodes' buffers, and
+ * each element's attributes are reported through one reusable view of
+ * its attribute list, so the walk allocates very little.  Those buffers
+ * and views must not be modified by handlers, or kept after the event.
+ * The attributes view also implements <em>AttributesEx</em>, so a
+ * builder can tell which attributes were defaulted from a DTD.
+ *
+ * <P> Namespace prefix mappings are reported for <em>xmlns</em>
+ * attributes, and also for any prefixes of element and attribute names
+ * that aren't declared by such attributes, as is common in documents
+ * built through DOM Level 2 calls.  When replaying part of a document,
+ * the mappings declared by ancestors of its top element are reported
+ * too.  Entity references, CDATA sections, comments and the document
+ * type are reported to the lexical handler, if one is set.
+ *
+ * @version $Revision$
+ */
+public class XmlDocumentReplayer
+{
+    private ContentHandler	contentHandler;
+    private LexicalHandler	lexicalHandler;
+    private boolean		namespacePrefixes;
+
+    // namespace bindings in scope, innermost last
+    private String		nsPrefixes [] = new String [16];
+    private String		nsURIs [] = new String [16];
+    private int			nsCount;
+
+    private AttributesView	attributes = new AttributesView ();
+
+
+    /**
+     * Constructs a replayer, which reports events to the given handler.
+     */
+    public XmlDocumentReplayer (ContentHandler handler)
+    {
+	contentHandler = handler;
+    }
+
+    /** Assigns the handler for content events. */
+    public void setContentHandler (ContentHandler handler)
+	{ contentHandler = handler; }
+
+    /** Returns the handler for content events. */
+    public ContentHandler getContentHandler ()
+	{ return contentHandler; }
+
+    /**
+     * Assigns the handler for lexical events, or null (the default)
+     * if they aren't wanted.
+     */
+    public void setLexicalHandler (LexicalHandler handler)
+	{ lexicalHandler = handler; }
+
+    /** Returns the handler for lexical events, if any. */
+    public LexicalHandler getLexicalHandler ()
+	{ return lexicalHandler; }
+
+    /**
+     * Controls whether <em>xmlns</em> attributes are included in the
+     * attributes of elements, like the SAX2 "namespace-prefixes"
+     * feature.  By default they are not; the prefix mappings they
+     * declare are reported either way.
+     */
+    public void setNamespacePrefixes (boolean value)
+	{ namespacePrefixes = value; }
+
+    /** Returns true if <em>xmlns</em> attributes are reported. */
+    public boolean getNamespacePrefixes ()
+	{ return namespacePrefixes; }
+
+
+    /**
+     * Reports the given node and everything below it, framed by the
+     * start and end of a document.  The node may be an
+     * <em>XmlDocument</em>, a document fragment, or any node which may
+     * be a child of some other node.
+     *
+     * @exception IllegalArgumentException if the node isn't one of this
+     *	package's document, element, or child nodes
+     * @exception SAXException as thrown by the handlers
+     */
+    public void replay (Node node)
+    throws SAXException
+    {
+	if (!(node instanceof NodeBase) || node instanceof AttributeNode)
+	    throw new IllegalArgumentException ();
+
+	nsCount = 0;
+	try {
+	    contentHandler.startDocument ();
+	    if (node instanceof ElementNode2)
+		declareAncestors ((ElementNode2) node);
+	    if (node instanceof XmlDocument)
+		replayChildren ((ParentNode) node);
+	    else
+		replayNode ((NodeBase) node);
+	    for (int i = nsCount - 1; i >= 0; i--)
+		contentHandler.endPrefixMapping (nsPrefixes [i]);
+	    contentHandler.endDocument ();
+	} finally {
+	    for (int i = 0; i < nsCount; i++)
+		nsPrefixes [i] = nsURIs [i] = null;
+	    nsCount = 0;
+	    attributes.clear ();
+	}
+    }
+
+    private void replayChildren (ParentNode parent)
+    throws SAXException
+    {
+	int	length = parent.getLength ();
+
+	for (int i = 0; i < length; i++)
+	    replayNode ((NodeBase) parent.item (i));
+    }
+
+    private void replayNode (NodeBase node)
+    throws SAXException
+    {
+	switch (node.getNodeType ()) {
+	  case Node.ELEMENT_NODE:
+	    replayElement ((ElementNode2) node);
+	    break;
+
+	  case Node.TEXT_NODE:
+	    char	text [] = ((DataNode) node).data;
+
+	    contentHandler.characters (text, 0, text.length);
+	    break;
+
+	  case Node.CDATA_SECTION_NODE:
+	    char	cdata [] = ((DataNode) node).data;
+
+	    if (lexicalHandler != null)
+		lexicalHandler.startCDATA ();
+	    contentHandler.characters (cdata, 0, cdata.length);
+	    if (lexicalHandler != null)
+		lexicalHandler.endCDATA ();
+	    break;
+
+	  case Node.COMMENT_NODE:
+	    if (lexicalHandler != null) {
+		char	comment [] = ((DataNode) node).data;
+
+		lexicalHandler.comment (comment, 0, comment.length);
+	    }
+	    break;
+
+	  case Node.PROCESSING_INSTRUCTION_NODE:
+	    PINode	pi = (PINode) node;
+
+	    contentHandler.processingInstruction (pi.getTarget (),
+		    pi.getData ());
+	    break;
+
+	  case Node.ENTITY_REFERENCE_NODE:
+	    if (lexicalHandler != null)
+		lexicalHandler.startEntity (node.getNodeName ());
+	    replayChildren ((ParentNode) node);
+	    if (lexicalHandler != null)
+		lexicalHandler.endEntity (node.getNodeName ());
+	    break;
+
+	  case Node.DOCUMENT_TYPE_NODE:
+	    if (lexicalHandler != null) {
+		Doctype	doctype = (Doctype) node;
+
+		lexicalHandler.startDTD (doctype.getName (),
+			doctype.getPublicId (), doctype.getSystemId ());
+		lexicalHandler.endDTD ();
+	    }
+	    break;
+
+	  case Node.DOCUMENT_FRAGMENT_NODE:
+	    replayChildren ((ParentNode) node);
+	    break;
+
+	  default:
+	    throw new IllegalArgumentException ();
+	}
+    }
+
+    private void replayElement (ElementNode2 element)
+    throws SAXException
+    {
+	int		mark = nsCount;
+	AttributeSet	set = element.attributes;
+	int		length = (set == null) ? 0 : set.getLength ();
+	String		localName = element.getLocalName ();
+	String		uri;
+
+	// namespace declarations, then any undeclared prefixes in use
+	for (int i = 0; i < length; i++) {
+	    String	qName = set.qNameAt (i);
+
+	    if (isNamespaceDeclaration (qName))
+		declare (qName.length () == 5 ? "" : qName.substring (6),
+			set.valueAt (i));
+	}
+	if (localName != null)
+	    declareIfNeeded (element.getPrefix (),
+		    element.getNamespaceURI ());
+	for (int i = 0; i < length; i++) {
+	    String	qName = set.qNameAt (i);
+	    String	attrURI = set.uriAt (i);
+	    int		colon = qName.indexOf (':');
+
+	    if (colon > 0 && attrURI != null && !isNamespaceDeclaration (qName))
+		declareIfNeeded (qName.substring (0, colon), attrURI);
+	}
+
+	uri = element.getNamespaceURI ();
+	if (uri == null)
+	    uri = "";
+	if (localName == null)
+	    localName = "";
+
+	attributes.setAttributes (set, namespacePrefixes,
+		element.getIdAttributeName ());
+	contentHandler.startElement (uri, localName,
+		element.getTagName (), attributes);
+	attributes.clear ();
+
+	replayChildren (element);
+
+	contentHandler.endElement (uri, localName, element.getTagName ());
+	while (nsCount > mark) {
+	    nsCount--;
+	    contentHandler.endPrefixMapping (nsPrefixes [nsCount]);
+	    nsPrefixes [nsCount] = nsURIs [nsCount] = null;
+	}
+    }
+
+    // Reports the bindings in scope at the top element of a subtree
+    private void declareAncestors (ElementNode2 element)
+    throws SAXException
+    {
+	for (Node p = element.getParentNode ();
+		p != null;
+		p = p.getParentNode ()) {
+	    if (!(p instanceof ElementNode2))
+		continue;
+
+	    AttributeSet	set = ((ElementNode2) p).attributes;
+	    int			length = (set == null) ? 0 : set.getLength ();
+
+	    for (int i = 0; i < length; i++) {
+		String	qName = set.qNameAt (i);
+		String	prefix;
+
+		if (!isNamespaceDeclaration (qName))
+		    continue;
+		prefix = (qName.length () == 5) ? "" : qName.substring (6);
+		if (lookup (prefix) == null)
+		    declare (prefix, set.valueAt (i));
+	    }
+	}
+    }
+
+    private static boolean isNamespaceDeclaration (String qName)
+    {
+	return qName.startsWith ("xmlns")
+	    && (qName.length () == 5 || qName.charAt (5) == ':');
+    }
+
+    // Returns the URI bound to the prefix, or null
+    private String lookup (String prefix)
+    {
+	for (int i = nsCount - 1; i >= 0; i--) {
+	    if (nsPrefixes [i].equals (prefix))
+		return nsURIs [i];
+	}
+	return null;
+    }
+
+    private void declareIfNeeded (String prefix, String uri)
+    throws SAXException
+    {
+	String	current;
+
+	if (prefix == null)
+	    prefix = "";
+	if (uri == null)
+	    uri = "";
+	if ("xml".equals (prefix))
+	    return;
+	current = lookup (prefix);
+	if (current == null)
+	    current = "";
+	if (!current.equals (uri))
+	    declare (prefix, uri);
+    }
+
+    private void declare (String prefix, String uri)
+    throws SAXException
+    {
+	if (nsCount == nsPrefixes.length) {
+	    String	temp [];
+
+	    temp = new String [nsCount * 2];
+	    System.arraycopy (nsPrefixes, 0, temp, 0, nsCount);
+	    nsPrefixes = temp;
+	    temp = new String [nsCount * 2];
+	    System.arraycopy (nsURIs, 0, temp, 0, nsCount);
+	    nsURIs = temp;
+	}
+	nsPrefixes [nsCount] = prefix;
+	nsURIs [nsCount++] = uri;
+	contentHandler.startPrefixMapping (prefix, uri);
+    }
+
+
+    //
+    // The attributes of the current element, read in place from its
+    // attribute list; "xmlns" attributes are skipped unless wanted.
+    //
+    static final class AttributesView implements AttributesEx
+    {
+	private AttributeSet	set;
+	private int		slots [] = new int [8];
+	private int		length;
+	private String		idName;
+
+	void setAttributes (AttributeSet set, boolean all, String idName)
+	{
+	    int		count = (set == null) ? 0 : set.getLength ();
+
+	    this.set = set;
+	    this.idName = idName;
+	    length = 0;
+	    if (slots.length < count)
+		slots = new int [count];
+	    for (int i = 0; i < count; i++) {
+		if (all || !isNamespaceDeclaration (set.qNameAt (i)))
+		    slots [length++] = i;
+	    }
+	}
+
+	void clear ()
+	{
+	    set = null;
+	    idName = null;
+	    length = 0;
+	}
+
+	public int getLength ()
+	    { return length; }
+
+	public String getURI (int i)
+	{
+	    if (i < 0 || i >= length)
+		return null;
+
+	    String	uri = set.uriAt (slots [i]);
+
+	    return (uri == null) ? "" : uri;
+	}
+
+	public String getLocalName (int i)
+	{
+	    if (i < 0 || i >= length)
+		return null;
+
+	    String	localName = set.localNameAt (slots [i]);
+
+	    return (localName == null) ? "" : localName;
+	}
+
+	public String getQName (int i)
+	{
+	    if (i < 0 || i >= length)
+		return null;
+	    return set.qNameAt (slots [i]);
+	}
+
+	// types aren't kept in the tree
+	public String getType (int i)
+	    { return (i < 0 || i >= length) ? null : "CDATA"; }
+
+	public String getValue (int i)
+	{
+	    if (i < 0 || i >= length)
+		return null;
+	    return set.valueAt (slots [i]);
+	}
+
+	public int getIndex (String uri, String localName)
+	{
+	    for (int i = 0; i < length; i++) {
+		if (getLocalName (i).equals (localName)
+			&& getURI (i).equals (uri))
+		    return i;
+	    }
+	    return -1;
+	}
+
+	public int getIndex (String qName)
+	{
+	    for (int i = 0; i < length; i++) {
+		if (set.qNameAt (slots [i]).equals (qName))
+		    return i;
+	    }
+	    return -1;
+	}
+
+	public String getType (String uri, String localName)
+	    { return getType (getIndex (uri, localName)); }
+
+	public String getType (String qName)
+	    { return getType (getIndex (qName)); }
+
+	public String getValue (String uri, String localName)
+	    { return getValue (getIndex (uri, localName)); }
+
+	public String getValue (String qName)
+	    { return getValue (getIndex (qName)); }
+
+	public boolean isSpecified (int i)
+	    { return set.specifiedAt (slots [i]); }
+
+	public String getDefault (int i)
+	    { return set.defaultAt (slots [i]); }
+
+	public String getIdAttributeName ()
+	    { return idName; }
+    }
+}
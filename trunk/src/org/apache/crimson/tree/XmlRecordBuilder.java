@@ -0,0 +1,248 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.tree;
+
+import org.w3c.dom.Element;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+
+/**
+ * This namespace aware builder turns a record-oriented document into a
+ * sequence of small DOM subtrees rather than one large tree.  Each element
+ * which is selected as a <em>record</em> is built as usual; when its end
+ * tag is seen it is passed to a {@link RecordHandler} and then released,
+ * so the memory needed is bounded by the size of the largest record, not
+ * by the size of the document.
+ *
+ * <P> Records are selected either by name, or (the default) by depth:
+ * the document element is at depth one, so the default depth of two
+ * selects each child of the document element.  Records never nest; an
+ * element matching the selection inside a record is just part of that
+ * record.
+ *
+ * <P> The ancestors of the current record are kept in the document
+ * returned by <em>getDocument</em>, with their attributes but without
+ * content which has already been handed off.  That keeps the inherited
+ * context (<em>xml:lang</em>, <em>xml:space</em> and namespace
+ * declarations) of a record available to the handler.  Text, comments
+ * and processing instructions appearing between records are discarded
+ * along with the records they follow, as are completed elements which
+ * held earlier records.
+ *
+ * @see RecordHandler
+ * @version $Revision$
+ */
+public class XmlRecordBuilder extends XmlDocumentBuilderNS
+{
+    private RecordHandler	handler;
+
+    // record selection
+    private int			recordDepth = 2;
+    private String		recordURI;
+    private String		recordName;
+
+    // used during parsing
+    private int			depth;
+    private int			recordStart;
+
+
+    /**
+     * Constructs a builder which reports each record to the handler.
+     *
+     * @param handler receives each completed record
+     */
+    public XmlRecordBuilder(RecordHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException();
+        }
+        this.handler = handler;
+    }
+
+    /**
+     * Selects records by their depth in the document; the document
+     * element is at depth one.  This is used unless a record name has
+     * been assigned.
+     */
+    public void setRecordDepth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException();
+        }
+        recordDepth = depth;
+    }
+
+    /**
+     * Returns the depth at which records are found.
+     */
+    public int getRecordDepth() {
+        return recordDepth;
+    }
+
+    /**
+     * Selects records by name, at any depth.  When the parser is not
+     * doing namespace processing, <em>localName</em> is matched against
+     * the element's qualified name and <em>namespaceURI</em> is ignored.
+     *
+     * @param namespaceURI the record's namespace URI, or null if it has
+     *	none
+     * @param localName the record's local name, or null to select records
+     *	by depth instead
+     */
+    public void setRecordName(String namespaceURI, String localName) {
+        if ("".equals(namespaceURI)) {
+            namespaceURI = null;
+        }
+        recordURI = namespaceURI;
+        recordName = localName;
+    }
+
+    /**
+     * Returns true if the element starting at the current depth is
+     * a record.
+     */
+    private boolean isRecord(String namespaceURI, String localName,
+                             String qName)
+    {
+        if (recordName == null) {
+            return depth == recordDepth;
+        }
+        if ("".equals(localName)) {
+            // not doing namespace processing
+            return recordName.equals(qName);
+        }
+        if (!recordName.equals(localName)) {
+            return false;
+        }
+        if ("".equals(namespaceURI)) {
+            namespaceURI = null;
+        }
+        return recordURI == null
+            ? namespaceURI == null
+            : recordURI.equals(namespaceURI);
+    }
+
+
+    //////////////////////////////////////////////////////////////////////
+    // ContentHandler callbacks
+    //////////////////////////////////////////////////////////////////////
+
+    /**
+     * Receive notification of the beginning of a document.
+     */
+    public void startDocument() throws SAXException {
+        super.startDocument();
+        depth = 0;
+        recordStart = 0;
+    }
+
+    /**
+     * Receive notification of the beginning of an element.
+     */
+    public void startElement(String namespaceURI, String localName,
+                             String qName, Attributes attributes)
+	throws SAXException
+    {
+        super.startElement(namespaceURI, localName, qName, attributes);
+        depth++;
+        if (recordStart == 0 && isRecord(namespaceURI, localName, qName)) {
+            recordStart = depth;
+        }
+    }
+
+    /**
+     * Receive notification of the end of an element.  If it ends a
+     * record, the record is reported and then released.
+     */
+    public void endElement(String namespaceURI, String localName,
+                           String qName)
+	throws SAXException
+    {
+        ParentNode record = elementStack[topOfStack];
+
+        super.endElement(namespaceURI, localName, qName);
+        if (depth-- != recordStart) {
+            return;
+        }
+        recordStart = 0;
+        handler.record((Element) record);
+
+        //
+        // Release the record and whatever else is complete:  at each
+        // level, only the open element leading to the next record is
+        // kept.  The document element is removed on its own, since the
+        // document may also hold a doctype.  Read-only nodes can't give
+        // up their children, so they're left as they are.
+        //
+        if (topOfStack == 0) {
+            if (record.getParentImpl() == document) {
+                document.removeChild(record);
+            }
+            return;
+        }
+        for (int i = 1; i <= topOfStack; i++) {
+            ParentNode node = elementStack[i];
+
+            if (!node.isReadonly()) {
+                node.removeChildren(i < topOfStack ? elementStack[i + 1]
+                                                   : null);
+            }
+        }
+    }
+}
@@ -174,6 +174,11 @@ import java.util.ResourceBundle;
 abstract public class MessageCatalog {
     private String			bundleName;
 
+    // caches, keyed by locale:  bundles, and tables mapping message
+    // IDs to formats (which must be synchronized while in use)
+    private Hashtable			bundles = new Hashtable (5);
+    private Hashtable			formats = new Hashtable (5);
+
     /**
      * Create a message catalog for use by classes in the same package
      * as the specified class.  This uses <em>Messages</em> resource
@@ -235,7 +240,7 @@ abstract public class MessageCatalog {
 	    locale = Locale.getDefault ();
 
 	try {
-	    bundle = ResourceBundle.getBundle (bundleName, locale);
+	    bundle = getBundle (locale);
 	    return bundle.getString (messageId);
 	} catch (MissingResourceException e) {
 	    return packagePrefix (messageId);
@@ -301,12 +306,10 @@ abstract public class MessageCatalog {
 	    locale = Locale.getDefault ();
 
 	// get the appropriately localized MessageFormat object
-	ResourceBundle	bundle;
 	MessageFormat	format;
 
 	try {
-	    bundle = ResourceBundle.getBundle (bundleName, locale);
-	    format = new MessageFormat (bundle.getString (messageId));
+	    format = getFormat (locale, messageId);
 	} catch (MissingResourceException e) {
 	    String retval;
 
@@ -317,16 +320,54 @@ abstract public class MessageCatalog {
 	    }
 	    return retval;
 	} 
-	format.setLocale (locale);
 
 	// return the formatted message
 	StringBuffer	result = new StringBuffer ();
 
-	result = format.format (parameters, result, new FieldPosition (0));
+	synchronized (format) {
+	    result = format.format (parameters, result,
+		    new FieldPosition (0));
+	}
 	return result.toString ();
     }
 
 
+    private ResourceBundle getBundle (Locale locale)
+    throws MissingResourceException
+    {
+	ResourceBundle	bundle = (ResourceBundle) bundles.get (locale);
+
+	if (bundle == null) {
+	    bundle = ResourceBundle.getBundle (bundleName, locale);
+	    bundles.put (locale, bundle);
+	}
+	return bundle;
+    }
+
+    private MessageFormat getFormat (Locale locale, String messageId)
+    throws MissingResourceException
+    {
+	Hashtable	table;
+	MessageFormat	format;
+
+	synchronized (formats) {
+	    table = (Hashtable) formats.get (locale);
+	    if (table == null) {
+		table = new Hashtable (17);
+		formats.put (locale, table);
+	    }
+	}
+	format = (MessageFormat) table.get (messageId);
+	if (format == null) {
+	    format = new MessageFormat (getBundle (locale)
+		    .getString (messageId));
+	    format.setLocale (locale);
+	    table.put (messageId, format);
+	}
+	return format;
+    }
+
+
     /**
      * Chooses a client locale to use, using the first language specified in
      * the list that is supported by this catalog.  If none of the specified
@@ -0,0 +1,256 @@
+/* 
+ * $Id$
+ *
+ * The Apache Software License, Version 1.1
+ *
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights 
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer. 
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:  
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Crimson" and "Apache Software Foundation" must
+ *    not be used to endorse or promote products derived from this
+ *    software without prior written permission. For written 
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    nor may "Apache" appear in their name, without prior written
+ *    permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation and was
+ * originally based on software copyright (c) 1999, Sun Microsystems, Inc., 
+ * http://www.sun.com.  For more information on the Apache Software 
+ * Foundation, please see <http://www.apache.org/>.
+ */
+
+package org.apache.crimson.util;
+
+
+/**
+ * A table of canonical strings for names, which may be used instead of
+ * <code>String.intern</code> for element and attribute names and for
+ * namespace URIs.  Equal names looked up in a table yield the same
+ * string, so names can be compared with "==", and many documents can
+ * share the storage for their names.
+ *
+ * <P> Tables may be used by many threads at once.  Lookups of names
+ * already in the table take no locks; adding a name locks only part of
+ * the table.  The number of names is bounded:  once a table is full,
+ * names it doesn't yet hold are simply returned interned.  Names are
+ * never removed, so a given name always yields the same string.
+ *
+ * <P> The strings a table returns are always those
+ * <code>String.intern</code> returns; a table only saves the cost of
+ * calling it, once per name and process.  So the parser may use the
+ * {@link #setShared shared} table, if one has been assigned, while
+ * the SAX2 <em>string-interning</em> feature stays true.
+ *
+ * @version $Revision$
+ */
+public final class SymbolTable
+{
+    private static SymbolTable	shared;
+
+    private Segment		segments [];
+    private int			segmentMax;
+
+
+    /**
+     * Constructs a table holding up to the given number of names.
+     */
+    public SymbolTable (int maxSize)
+    {
+	if (maxSize <= 0)
+	    throw new IllegalArgumentException ();
+	segments = new Segment [16];
+	segmentMax = (maxSize + segments.length - 1) / segments.length;
+	for (int i = 0; i < segments.length; i++)
+	    segments [i] = new Segment ();
+    }
+
+    /**
+     * Assigns the table used by all parsers in this process, or null
+     * (the default) to use <code>String.intern</code>.  This should be
+     * done once, before any documents are parsed:  parsers use the
+     * table assigned when each parse starts, and a grammar may only be
+     * used by parsers using the same table as the parser which built it.
+     */
+    public static synchronized void setShared (SymbolTable table)
+	{ shared = table; }
+
+    /**
+     * Returns the table used by all parsers in this process, or null.
+     */
+    public static synchronized SymbolTable getShared ()
+	{ return shared; }
+
+
+    /**
+     * Returns the canonical string for the given characters.
+     */
+    public String intern (char buf [], int offset, int length)
+    {
+	int		hash = 0;
+
+	for (int i = 0; i < length; i++)
+	    hash = 31 * hash + buf [offset + i];
+	return segmentFor (hash).intern (buf, offset, length, hash, null);
+    }
+
+    /**
+     * Returns the canonical string equal to the given one.
+     */
+    public String intern (String name)
+    {
+	int		hash = name.hashCode ();
+
+	return segmentFor (hash).intern (null, 0, name.length (), hash, name);
+    }
+
+    /**
+     * Returns the number of names in the table.
+     */
+    public int size ()
+    {
+	int		retval = 0;
+
+	for (int i = 0; i < segments.length; i++)
+	    retval += segments [i].count;
+	return retval;
+    }
+
+    private Segment segmentFor (int hash)
+    {
+	// spread the high bits, which the chains mostly don't use
+	return segments [((hash >>> 16) ^ hash) & (segments.length - 1)];
+    }
+
+
+    // entries are immutable, so readers needn't lock
+    private static final class Entry
+    {
+	final String		name;
+	final int		hash;
+	final Entry		next;
+
+	Entry (String name, int hash, Entry next)
+	{
+	    this.name = name;
+	    this.hash = hash;
+	    this.next = next;
+	}
+
+	boolean matches (char buf [], int offset, int length, String s)
+	{
+	    if (name.length () != length)
+		return false;
+	    if (s != null)
+		return name.equals (s);
+	    for (int i = 0; i < length; i++)
+		if (name.charAt (i) != buf [offset + i])
+		    return false;
+	    return true;
+	}
+    }
+
+    // one lock's worth of the table
+    private final class Segment
+    {
+	volatile Entry		table [] = new Entry [64];
+	int			count;
+
+	String intern (char buf [], int offset, int length, int hash, String s)
+	{
+	    Entry		tab [] = table;
+	    Entry		e;
+
+	    for (e = tab [hash & (tab.length - 1)]; e != null; e = e.next) {
+		if (e.hash == hash && e.matches (buf, offset, length, s))
+		    return e.name;
+	    }
+	    return add (buf, offset, length, hash, s);
+	}
+
+	private synchronized String add (
+	    char	buf [],
+	    int		offset,
+	    int		length,
+	    int		hash,
+	    String	s
+	) {
+	    Entry		tab [] = table;
+	    int			index = hash & (tab.length - 1);
+	    Entry		e;
+
+	    // look again, now that other threads can't add it
+	    for (e = tab [index]; e != null; e = e.next) {
+		if (e.hash == hash && e.matches (buf, offset, length, s))
+		    return e.name;
+	    }
+
+	    // each name is added once, so the JVM's own table is consulted
+	    // only then, and names stay comparable with interned ones
+	    if (s == null)
+		s = new String (buf, offset, length);
+	    s = s.intern ();
+	    if (count >= segmentMax)
+		return s;
+
+	    if (count >= (tab.length * 3) / 4) {
+		tab = rehash (tab);
+		index = hash & (tab.length - 1);
+	    }
+	    tab [index] = new Entry (s, hash, tab [index]);
+	    count++;
+	    table = tab;
+	    return s;
+	}
+
+	private Entry [] rehash (Entry old [])
+	{
+	    Entry		tab [] = new Entry [2 * old.length];
+
+	    for (int i = 0; i < old.length; i++) {
+		for (Entry e = old [i]; e != null; e = e.next) {
+		    int		index = e.hash & (tab.length - 1);
+
+		    tab [index] = new Entry (e.name, e.hash, tab [index]);
+		}
+	    }
+	    return tab;
+	}
+    }
+}
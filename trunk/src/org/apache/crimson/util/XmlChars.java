@@ -72,6 +72,38 @@ public class XmlChars
     // can't construct instances
     private XmlChars () { }
 
+    //
+    // Bitmaps of the Basic Multilingual Plane, one bit per character,
+    // computed once from the rules below (which follow the footnotes
+    // to appendix B of XML 1.0) so that each test is one array probe.
+    //
+    private static final int	CHAR [] = new int [0x10000 >> 5];
+    private static final int	LETTER [] = new int [0x10000 >> 5];
+    private static final int	NAME_CHAR [] = new int [0x10000 >> 5];
+    private static final int	NCNAME_CHAR [] = new int [0x10000 >> 5];
+
+    static {
+	for (int i = 0; i < 0x10000; i++) {
+	    char	c = (char) i;
+	    int		bit = 1 << (i & 0x1f);
+
+	    if (char0 (i))
+		CHAR [i >> 5] |= bit;
+	    if (letter (c))
+		LETTER [i >> 5] |= bit;
+	    if (nameChar (c)) {
+		NAME_CHAR [i >> 5] |= bit;
+		if (c != ':')
+		    NCNAME_CHAR [i >> 5] |= bit;
+	    }
+	}
+    }
+
+    private static boolean isSet (int table [], char c)
+    {
+	return (table [c >> 5] & (1 << (c & 0x1f))) != 0;
+    }
+
     /**
      * Returns true if the argument, a UCS-4 character code, is valid in
      * XML documents.  Unicode characters fit into the low sixteen
@@ -90,6 +122,13 @@ public class XmlChars
      * @param ucs4char The 32-bit UCS-4 character being tested.
      */
     static public boolean isChar (int ucs4char)
+    {
+	if (ucs4char >= 0 && ucs4char < 0x10000)
+	    return isSet (CHAR, (char) ucs4char);
+	return ucs4char >= 0x10000 && ucs4char <= 0x10ffff;
+    }
+
+    private static boolean char0 (int ucs4char)
     {
 	// [2] Char ::= #x0009 | #x000A | #x000D
 	//			| [#x0020-#xD7FF]
@@ -110,6 +149,11 @@ public class XmlChars
      * @see #isLetter
      */
     public static boolean isNameChar (char c)
+    {
+	return isSet (NAME_CHAR, c);
+    }
+
+    private static boolean nameChar (char c)
     {
 	// [4] NameChar ::= Letter | Digit | '.' | '_' | ':'
 	//			| CombiningChar | Extender
@@ -138,7 +182,7 @@ public class XmlChars
     {
 	// [NC 5] NCNameChar ::= Letter | Digit | '.' | '_' 
 	//			| CombiningChar | Extender
-	return c != ':' && isNameChar (c);
+	return isSet (NCNAME_CHAR, c);
     }
 
     /**
@@ -195,6 +239,11 @@ public class XmlChars
      * @see #isNCNameChar
      */
     public static boolean isLetter (char c)
+    {
+	return isSet (LETTER, c);
+    }
+
+    private static boolean letter (char c)
     {
 	// [84] Letter ::= BaseChar | Ideographic
 	// [85] BaseChar ::= ... too much to repeat
@@ -108,13 +108,21 @@ public class XmlNames
      */
     public static boolean isUnqualifiedName (String value)
     {
-	if (value == null || value.length() == 0)
+	if (value == null)
 	    return false;
+	return isUnqualifiedName (value, 0, value.length ());
+    }
 
-	char c = value.charAt (0);
+    // checks part of a string, so qualified names needn't be split
+    private static boolean isUnqualifiedName (String value, int start, int end)
+    {
+	if (start >= end)
+	    return false;
+
+	char c = value.charAt (start);
 	if (!XmlChars.isLetter (c) && c != '_')
 	    return false;
-	for (int i = 1; i < value.length (); i++)
+	for (int i = start + 1; i < end; i++)
 	    if (!XmlChars.isNCNameChar (value.charAt (i)))
 		return false;
 	return true;
@@ -152,8 +160,8 @@ public class XmlNames
 	if (last != first)
 	    return false;
 	
-	return isUnqualifiedName (value.substring (0, first))
-		&& isUnqualifiedName (value.substring (first + 1));
+	return isUnqualifiedName (value, 0, first)
+		&& isUnqualifiedName (value, first + 1, value.length ());
     }
 
     /**